@@ -0,0 +1,114 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    /**
+     * Total number of workers parsing pages, shared by all crawled sites
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+    /**
+     * Total number of threads loading pages, shared by all crawled sites
+     */
+    private int fetchThreads = 64;
+    /**
+     * Max number of loaded pages waiting for a free worker
+     */
+    private int processQueueSize = 256;
+    /**
+     * Max number of pages of one site loaded or parsed at once
+     */
+    private int perSiteWorkers = 8;
+    /**
+     * Default requests per second to one host, can be set for a site in indexing-settings
+     */
+    private double requestsPerSecond = 5;
+    /**
+     * Default max open connections to one host, can be set for a site in indexing-settings
+     */
+    private int maxConnectionsPerHost = 2;
+    /**
+     * Keep gzip-compressed raw HTML of pages, search uses only extracted title and text
+     */
+    private boolean storeRawHtml = false;
+    /**
+     * Max bytes of a page body read, longer page is cut. Page declaring longer Content-Length is not loaded,
+     * only its status code is stored. 0 for no limit
+     */
+    private int maxBodySize = 2 * 1024 * 1024;
+    /**
+     * Max bytes of robots.txt or sitemap read, a sitemap may list 50 000 urls in 50 MB. 0 for no limit
+     */
+    private int maxResourceSize = 50 * 1024 * 1024;
+    /**
+     * Store ordinal positions of all words of page text, needed for phrase and proximity search
+     */
+    private boolean tokenPositions = true;
+    /**
+     * Directory of crawl frontier logs, crawl stopped by user or by crash is resumed from them
+     */
+    private String frontierDirectory = "crawl-frontier";
+    /**
+     * Default max number of links followed from the site root, 0 for no limit. Can be set for a site
+     * in indexing-settings
+     */
+    private int maxDepth = 0;
+    /**
+     * Default max number of pages loaded by one site crawl, 0 for no limit. Can be set for a site
+     * in indexing-settings
+     */
+    private int maxPages = 0;
+    /**
+     * Read robots.txt of each site: disallowed pages are not loaded and Crawl-delay slows down requests
+     */
+    private boolean obeyRobots = true;
+    /**
+     * Queue pages listed in sitemaps at crawl start, incremental crawl skips pages not modified since
+     * the previous crawl by sitemap lastmod
+     */
+    private boolean useSitemaps = true;
+    private VisitedUrls visitedUrls = new VisitedUrls();
+    private Duplicates duplicates = new Duplicates();
+
+    @Getter
+    @Setter
+    public static class VisitedUrls {
+        /**
+         * Memory-bounded Bloom filter instead of exact set, for very large sites.
+         * Small share of new URLs may be taken as visited and skipped
+         */
+        private boolean bloomFilter = false;
+        private int expectedUrls = 1_000_000;
+        private double falsePositiveRate = 0.001;
+    }
+
+    @Getter
+    @Setter
+    public static class Duplicates {
+        /**
+         * Query parameters dropped from links, name ending with * drops all parameters with this prefix
+         */
+        private List<String> ignoredQueryParameters = new ArrayList<>(Arrays.asList(
+                "utm_*", "gclid", "yclid", "fbclid", "_openstat", "sessionid", "jsessionid", "phpsessid"));
+        private boolean sortQueryParameters = true;
+        /**
+         * New page with rel=canonical link to another page of the site is not stored, the canonical page is queued
+         */
+        private boolean relCanonical = true;
+        /**
+         * Max number of different SimHash bits of a near duplicate page, which is not stored. -1 to store all pages
+         */
+        private int nearDuplicateDistance = 3;
+    }
+}
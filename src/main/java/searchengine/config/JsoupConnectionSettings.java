@@ -0,0 +1,15 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "jsoup-connection-settings")
+public class JsoupConnectionSettings {
+    private String userAgent = "WondererSearchBot";
+    private String referrer = "http://www.google.com";
+}
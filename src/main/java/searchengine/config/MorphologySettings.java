@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "morphology-settings")
+public class MorphologySettings {
+    /**
+     * Max number of word forms with cached lemma
+     */
+    private int cacheSize = 200_000;
+    /**
+     * Lemmatize Latin words with English morphology, otherwise they are indexed as is
+     */
+    private boolean english = true;
+}
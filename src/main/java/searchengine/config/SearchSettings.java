@@ -0,0 +1,84 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    /**
+     * Keep compressed copy of index table in memory and search it instead of DB
+     */
+    private boolean inMemoryIndex = true;
+    /**
+     * Write index of each crawled site to memory-mapped segment files, so restart does not read index table
+     */
+    private boolean segments = true;
+    private String indexDirectory = "search-index";
+    /**
+     * Segments of a site are merged in background when there are more of them
+     */
+    private int maxSegmentsPerSite = 4;
+    /**
+     * Ranking used when search request does not set it: rank (sum of lemma ranks) or bm25
+     */
+    private String ranking = "rank";
+    private Bm25 bm25 = new Bm25();
+    private ResultCache resultCache = new ResultCache();
+    private Positional positional = new Positional();
+    /**
+     * Approximate number of chars of page text in a snippet
+     */
+    private int snippetLength = 200;
+    /**
+     * Threads building snippets of result pages in parallel, shared by all requests
+     */
+    private int snippetThreads = Runtime.getRuntime().availableProcessors();
+
+    @Getter
+    @Setter
+    public static class Bm25 {
+        /**
+         * How fast repeated lemma stops adding to the score
+         */
+        private double k1 = 1.2;
+        /**
+         * How much longer pages are penalized, from 0 to 1
+         */
+        private double b = 0.75;
+    }
+
+    @Getter
+    @Setter
+    public static class ResultCache {
+        /**
+         * Max number of cached queries, 0 disables the cache
+         */
+        private int size = 1000;
+        /**
+         * Number of best pages ranked and cached for a query, deeper result pages are ranked again
+         */
+        private int depth = 200;
+    }
+
+    @Getter
+    @Setter
+    public static class Positional {
+        /**
+         * Check quoted phrases and boost pages with query words close to each other
+         */
+        private boolean enabled = true;
+        /**
+         * Number of best pages whose word positions are read, phrase matches are looked for only among them
+         */
+        private int depth = 100;
+        /**
+         * Score boost of a page with all query words next to each other
+         */
+        private double proximityWeight = 0.5;
+    }
+}
@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Crawl priority rule of a site: urls matching the pattern are crawled earlier or later
+ */
+@Getter
+@Setter
+public class UrlRule {
+    /**
+     * Regular expression searched in the url
+     */
+    private String pattern;
+    /**
+     * Added to the value of matching url, one unit is worth one level of link depth. Negative for pages
+     * like pagination or filters that should wait
+     */
+    private double boost;
+}
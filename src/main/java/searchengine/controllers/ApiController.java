@@ -30,8 +30,14 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<RequestAnswer> startIndexing() {
-        return ResponseEntity.ok(indexingService.startIndexing());
+    public ResponseEntity<RequestAnswer> startIndexing(
+            @RequestParam(name = "incremental", defaultValue = "false") boolean incremental) {
+        return ResponseEntity.ok(indexingService.startIndexing(incremental));
+    }
+
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<RequestAnswer> resumeIndexing() {
+        return ResponseEntity.ok(indexingService.resumeIndexing());
     }
 
     @GetMapping("/stopIndexing")
@@ -49,7 +55,8 @@ public class ApiController {
     public ResponseEntity<RequestAnswer> search(@RequestParam(name = "query") String query,
                                                 @RequestParam(name = "offset") int offset,
                                                 @RequestParam (name = "limit") int limit,
-                                                @RequestParam (name = "site") String site) {
-        return ResponseEntity.ok(searchService.search(query, offset, limit, site));
+                                                @RequestParam (name = "site") String site,
+                                                @RequestParam (name = "ranking", defaultValue = "") String ranking) {
+        return ResponseEntity.ok(searchService.search(query, offset, limit, site, ranking));
     }
 }
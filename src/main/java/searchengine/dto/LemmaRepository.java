@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Lemma;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,6 +15,8 @@ public interface LemmaRepository extends JpaRepository<Lemma, Long> {
             value = "select * from lemma where lemma.lemma=?1")
     List<Lemma> findByLemma(String lemma);
 
+    List<Lemma> findByLemmaIn(Collection<String> lemmas);
+
     @Query(nativeQuery = true,
             value = "SELECT COUNT(*) FROM lemma l")
     int lemmasTotal();
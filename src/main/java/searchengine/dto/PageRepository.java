@@ -1,20 +1,36 @@
 package searchengine.dto;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Page;
+import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Long> {
 
-    List<Page> findByPath(String path);
+    List<Page> findBySiteIdAndPath(Site site, String path);
+
+    List<Page> findByIdIn(Collection<Integer> ids);
+
+    @Transactional
+    long deleteBySiteIdAndPath(Site site, String path);
+
+    @Query(nativeQuery = true,
+            value = "SELECT id AS id, path AS path, etag AS etag, last_modified AS lastModified, " +
+                    "content_hash AS contentHash, sim_hash AS simHash FROM page WHERE site_id = ?1")
+    List<PageState> findStatesBySiteId(int siteId);
 
     @Transactional
-    long deleteByPath(String path);
+    @Modifying
+    @Query(nativeQuery = true,
+            value = "UPDATE page SET etag = ?2, last_modified = ?3 WHERE id = ?1")
+    int updateValidators(int id, String etag, String lastModified);
 
     @Query(nativeQuery = true,
             value = "SELECT COUNT(*) FROM page")
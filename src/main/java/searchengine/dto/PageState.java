@@ -0,0 +1,18 @@
+package searchengine.dto;
+
+/**
+ * Stored state of a page used to skip unchanged pages on incremental crawl
+ */
+public interface PageState {
+    int getId();
+
+    String getPath();
+
+    String getEtag();
+
+    String getLastModified();
+
+    String getContentHash();
+
+    Long getSimHash();
+}
@@ -1,9 +1,11 @@
 package searchengine.dto;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.Generation;
 import searchengine.model.Site;
 
 import java.util.List;
@@ -13,8 +15,23 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
     @Transactional
     void deleteByUrl(String url);
 
+    List<Site> findByUrl(String url);
+
+    List<Site> findByUrlAndGeneration(String url, Generation generation);
+
+    List<Site> findByGeneration(Generation generation);
+
+    /**
+     * Retires all other generations of the site url, to be called with the new generation made serving
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = "UPDATE site SET generation = 'RETIRED' WHERE url = ?1 AND id <> ?2")
+    int retireOtherGenerations(String url, int servingId);
+
     @Query(nativeQuery = true,
-            value = "SELECT COUNT(*) FROM site")
+            value = "SELECT COUNT(DISTINCT url) FROM site")
     int sitesTotal();
 
     @Query(nativeQuery = true,
@@ -8,4 +8,8 @@ public class TotalStatistics {
     private int pages;
     private int lemmas;
     private boolean indexing;
+    private double lemmaCacheHitRate;
+    private double searchCacheHitRate;
+    private long searchCacheHits;
+    private long searchCacheMisses;
 }
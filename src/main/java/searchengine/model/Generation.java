@@ -0,0 +1,11 @@
+package searchengine.model;
+
+/**
+ * Role of a stored copy of a site. Reindexing builds a new copy while search is served from the old one,
+ * then the old copy is retired and deleted in background
+ */
+public enum Generation {
+    BUILDING,
+    SERVING,
+    RETIRED
+}
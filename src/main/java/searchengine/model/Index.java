@@ -12,7 +12,7 @@ import javax.persistence.*;
 @Entity(name = "`index`")
 public class Index {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
     @ManyToOne
@@ -27,4 +27,17 @@ public class Index {
 
     @Column(name = "`rank`", nullable = false)
     private float rank;
+
+    /**
+     * Varint-encoded gaps between char offsets of first lemma occurrences in page text, used for snippets
+     */
+    @Column(columnDefinition = "VARBINARY(255)")
+    private byte[] positions;
+
+    /**
+     * Varint-encoded gaps between ordinal numbers of all lemma words in page text, for phrase and proximity search.
+     * Null if not stored
+     */
+    @Column(columnDefinition = "BLOB")
+    private byte[] tokenPositions;
 }
@@ -11,9 +11,13 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
+@Table(uniqueConstraints = {
+        @UniqueConstraint(name = "site_lemma_index",
+                columnNames = {"site_id", "lemma"})
+})
 public class Lemma {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
     @ManyToOne
@@ -21,7 +25,7 @@ public class Lemma {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private Site siteId;
 
-    @Column(columnDefinition = "VARCHAR(255)", nullable = false)
+    @Column(columnDefinition = "VARCHAR(255) COLLATE utf8mb4_bin", nullable = false)
     private String lemma;
 
     @Column(nullable = false)
@@ -13,8 +13,8 @@ import java.util.Set;
 @Setter
 @Entity(name = "page")
 @Table(indexes = {
-        @Index(name = "path_index",
-                columnList = "path",
+        @Index(name = "site_path_index",
+                columnList = "site_id, path",
                 unique = true)
 })
 public class Page {
@@ -28,14 +28,52 @@ public class Page {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private Site siteId;
 
-    @Column(columnDefinition = "VARCHAR(255)", nullable = false, unique = true)
+    /**
+     * Unique within a site, generations of the same site keep their own copies of a page
+     */
+    @Column(columnDefinition = "VARCHAR(255)", nullable = false)
     private String path;
 
     @Column(nullable = false)
     private int code;
 
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    /**
+     * Plain text of the page body extracted at crawl time
+     */
     @Column(columnDefinition = "MEDIUMTEXT")
-    private String content;
+    private String text;
+
+    /**
+     * Number of lemmas counted on the page, page length for ranking
+     */
+    @Column(nullable = false)
+    private int tokenCount;
+
+    /**
+     * ETag header of the last response, sent back in If-None-Match on incremental crawl
+     */
+    @Column(columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    /**
+     * Last-Modified header of the last response, sent back in If-Modified-Since on incremental crawl
+     */
+    @Column(columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    /**
+     * SHA-256 of page title and text, page with the same hash is not indexed again
+     */
+    @Column(columnDefinition = "CHAR(64)")
+    private String contentHash;
+
+    /**
+     * SimHash of page words, new page close to a stored one is taken as near duplicate and not stored
+     */
+    private Long simHash;
 
     @OneToMany(mappedBy = "pageId")
     Set<searchengine.model.Index> indexes;
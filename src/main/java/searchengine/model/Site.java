@@ -5,7 +5,11 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import javax.persistence.*;
+import searchengine.config.UrlRule;
+
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 @Setter
@@ -34,6 +38,32 @@ public class Site {
     @Column(name = "last_error", columnDefinition = "TEXT")
     private String lastError;
 
+    /**
+     * Start of the last crawl, pages listed in sitemaps as not modified since then are skipped by the next one
+     */
+    @Column(name = "crawl_start_time")
+    private LocalDateTime crawlStartTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(columnDefinition = "VARCHAR(16) NOT NULL DEFAULT 'SERVING'")
+    private Generation generation = Generation.SERVING;
+
+    // Crawl limits of the site from indexing-settings, not stored in DB
+    @Transient
+    private Double requestsPerSecond;
+
+    @Transient
+    private Integer maxConnections;
+
+    @Transient
+    private Integer maxDepth;
+
+    @Transient
+    private Integer maxPages;
+
+    @Transient
+    private List<UrlRule> urlRules = Collections.emptyList();
+
     public Site(String url, String name) {
         this.url = url;
         this.name = name;
@@ -41,6 +71,17 @@ public class Site {
         updateStatusAndTime(Status.INDEXING);
     }
 
+    /**
+     * Takes crawl limits of the site from indexing-settings, site loaded from DB has none
+     */
+    public void copyCrawlLimits(Site configured) {
+        requestsPerSecond = configured.getRequestsPerSecond();
+        maxConnections = configured.getMaxConnections();
+        maxDepth = configured.getMaxDepth();
+        maxPages = configured.getMaxPages();
+        urlRules = configured.getUrlRules();
+    }
+
     public void updateStatusAndTime(Status status) {
         this.status = status;
         statusTime = LocalDateTime.now();
@@ -0,0 +1,71 @@
+package searchengine.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter of strings with fixed memory size
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(int expectedElements, double falsePositiveRate) {
+        long optimalBits = (long) Math.ceil(-expectedElements * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedElements * Math.log(2)));
+    }
+
+    public boolean mightContain(String value) {
+        long hash1 = hash(value, 0xcbf29ce484222325L);
+        long hash2 = hash(value, 0x84222325cbf29ce4L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds value to the filter
+     *
+     * @return true if value was not in the filter before
+     */
+    public boolean put(String value) {
+        long hash1 = hash(value, 0xcbf29ce484222325L);
+        long hash2 = hash(value, 0x84222325cbf29ce4L) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+            changed |= (current & mask) == 0;
+        }
+        return changed;
+    }
+
+    private static long hash(String value, long seed) {
+        // FNV-1a over chars with final avalanche mixing
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,54 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+/**
+ * Okapi BM25: lemma rank saturates with k1 and is normalized by page length with b,
+ * lemmas found on fewer pages of the site weigh more
+ */
+@Component
+public class Bm25Scorer implements Scorer {
+    public static final String NAME = "bm25";
+
+    private final SearchSettings.Bm25 settings;
+
+    public Bm25Scorer(SearchSettings searchSettings) {
+        this.settings = searchSettings.getBm25();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean usesPageStatistics() {
+        return true;
+    }
+
+    @Override
+    public void score(float[][] ranks, int[] documentFrequencies, int[] pageLengths, int size,
+                      SiteStatistics statistics, double[] scores) {
+        double k1 = settings.getK1();
+        double b = settings.getB();
+        double averagePageLength = Math.max(1, statistics.getAveragePageLength());
+        int pageCount = Math.max(statistics.getPageCount(), 1);
+
+        // Length part of the denominator is the same for all lemmas of a page
+        double[] lengthNorms = new double[size];
+        for (int i = 0; i < size; i++) {
+            lengthNorms[i] = k1 * (1 - b + b * pageLengths[i] / averagePageLength);
+        }
+
+        for (int lemma = 0; lemma < ranks.length; lemma++) {
+            int documentFrequency = Math.min(documentFrequencies[lemma], pageCount);
+            double idf = Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            float[] lemmaRanks = ranks[lemma];
+            for (int i = 0; i < size; i++) {
+                double rank = lemmaRanks[i];
+                scores[i] += idf * rank * (k1 + 1) / (rank + lengthNorms[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package searchengine.services;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Posting list of a lemma kept in memory: sorted page ids stored as varint-encoded gaps
+ * and ranks in a parallel array. Pages are usually added in ascending id order and appended,
+ * page added out of order makes the list re-encoded
+ */
+public class CompressedPostingList {
+    private byte[] data = new byte[8];
+    private int dataLength;
+    private float[] ranks = new float[2];
+    private int size;
+    private int lastPageId;
+
+    public static CompressedPostingList of(PostingList postingList) {
+        CompressedPostingList compressed = new CompressedPostingList();
+        compressed.appendAll(postingList);
+        return compressed;
+    }
+
+    public synchronized void add(int pageId, float rank) {
+        if (size == 0 || pageId > lastPageId) {
+            append(pageId, rank);
+            return;
+        }
+
+        PostingList.Builder builder = new PostingList.Builder();
+        PostingList current = decode(null);
+        int position = Arrays.binarySearch(current.getPageIds(), pageId);
+        if (position >= 0) {
+            ranks[position] = rank;
+            return;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            builder.add(current.getPageIds()[i], current.getRanks()[i]);
+        }
+        builder.add(pageId, rank);
+        reset();
+        appendAll(builder.build());
+    }
+
+    /**
+     * Adds pages of another list, pages present in both lists keep rank of this one
+     */
+    public synchronized void addAll(PostingList postingList) {
+        if (size == 0 || postingList.size() == 0 || postingList.getPageIds()[0] > lastPageId) {
+            appendAll(postingList);
+            return;
+        }
+
+        PostingList current = decode(null);
+        PostingList.Builder builder = new PostingList.Builder();
+        int i = 0;
+        int j = 0;
+        while (i < current.size() || j < postingList.size()) {
+            if (j == postingList.size()
+                    || (i < current.size() && current.getPageIds()[i] <= postingList.getPageIds()[j])) {
+                if (j < postingList.size() && current.getPageIds()[i] == postingList.getPageIds()[j]) {
+                    j++;
+                }
+                builder.add(current.getPageIds()[i], current.getRanks()[i]);
+                i++;
+            } else {
+                builder.add(postingList.getPageIds()[j], postingList.getRanks()[j]);
+                j++;
+            }
+        }
+        reset();
+        appendAll(builder.build());
+    }
+
+    /**
+     * @param deletedPages sorted ids of pages to skip, null to decode all
+     */
+    public synchronized PostingList decode(int[] deletedPages) {
+        int[] pageIds = new int[size];
+        float[] pageRanks = new float[size];
+        int count = 0;
+
+        int pageId = 0;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += gap;
+
+            if (deletedPages == null || deletedPages.length == 0 || Arrays.binarySearch(deletedPages, pageId) < 0) {
+                pageIds[count] = pageId;
+                pageRanks[count] = ranks[i];
+                count++;
+            }
+        }
+
+        if (count < size) {
+            return new PostingList(Arrays.copyOf(pageIds, count), Arrays.copyOf(pageRanks, count));
+        }
+        return new PostingList(pageIds, pageRanks);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Writes encoded page ids followed by ranks
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.write(data, 0, dataLength);
+        for (int i = 0; i < size; i++) {
+            out.writeFloat(ranks[i]);
+        }
+    }
+
+    /**
+     * Approximate memory taken by encoded page ids and ranks
+     */
+    public synchronized long getBytes() {
+        return data.length + (long) ranks.length * Float.BYTES;
+    }
+
+    private void appendAll(PostingList postingList) {
+        for (int i = 0; i < postingList.size(); i++) {
+            append(postingList.getPageIds()[i], postingList.getRanks()[i]);
+        }
+    }
+
+    private void append(int pageId, float rank) {
+        if (data.length - dataLength < 5) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + 5));
+        }
+        if (size == ranks.length) {
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+
+        int gap = size == 0 ? pageId : pageId - lastPageId;
+        while ((gap & ~0x7F) != 0) {
+            data[dataLength++] = (byte) ((gap & 0x7F) | 0x80);
+            gap >>>= 7;
+        }
+        data[dataLength++] = (byte) gap;
+
+        ranks[size++] = rank;
+        lastPageId = pageId;
+    }
+
+    private void reset() {
+        dataLength = 0;
+        size = 0;
+        lastPageId = 0;
+    }
+}
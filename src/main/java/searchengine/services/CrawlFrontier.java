@@ -0,0 +1,176 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import searchengine.config.CrawlerSettings;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only log of a site crawl frontier: queued urls with their depth and urls already parsed.
+ * Records go through a large buffer, so the log costs one file write per many pages.
+ * Crawl stopped by user or by crash is resumed from urls queued but not parsed
+ * <p>
+ * Record format, one per line: {@code Q <depth> <url>} for queued url, {@code D <url>} for parsed one
+ */
+public class CrawlFrontier {
+    private static final Logger LOGGER = LogManager.getLogger(CrawlFrontier.class);
+    private static final String EXTENSION = ".frontier";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private Writer writer;
+
+    public CrawlFrontier(Path file) {
+        this.file = file;
+    }
+
+    public static CrawlFrontier of(CrawlerSettings settings, int siteId) {
+        return new CrawlFrontier(Path.of(settings.getFrontierDirectory()).resolve(siteId + EXTENSION));
+    }
+
+    /**
+     * Starts writing records, the log is not written before that
+     *
+     * @param append keep records of the stopped crawl being resumed
+     */
+    public synchronized void open(boolean append) {
+        try {
+            Files.createDirectories(file.getParent());
+            writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING), BUFFER_SIZE);
+            if (append && endsWithCutRecord()) {
+                writer.write('\n');
+            }
+        } catch (IOException exception) {
+            LOGGER.error("Crawl frontier " + file + " is not written, crawl can not be resumed", exception);
+            writer = null;
+        }
+    }
+
+    public synchronized void queued(FrontierEntry entry) {
+        write("Q " + entry.getDepth() + ' ' + entry.getUrl() + '\n');
+    }
+
+    public synchronized void done(String url) {
+        write("D " + url + '\n');
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException exception) {
+            LOGGER.error("Crawl frontier " + file + " is not saved", exception);
+        }
+        writer = null;
+    }
+
+    /**
+     * Drops the log of finished crawl
+     */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException exception) {
+            LOGGER.error("Crawl frontier " + file + " is not deleted", exception);
+        }
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Reads the log of a stopped crawl. Record cut by crash at the end of the log is skipped
+     */
+    public State read() throws IOException {
+        Map<String, Integer> queued = new LinkedHashMap<>();
+        Set<String> done = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("D ")) {
+                    done.add(line.substring(2));
+                } else if (line.startsWith("Q ")) {
+                    int separator = line.indexOf(' ', 2);
+                    if (separator < 0) {
+                        continue;
+                    }
+                    try {
+                        queued.putIfAbsent(line.substring(separator + 1),
+                                Integer.parseInt(line.substring(2, separator)));
+                    } catch (NumberFormatException ignored) {
+                        // Cut record
+                    }
+                }
+            }
+        }
+
+        List<FrontierEntry> pending = new ArrayList<>();
+        queued.forEach((url, depth) -> {
+            if (!done.contains(url)) {
+                pending.add(new FrontierEntry(url, depth));
+            }
+        });
+        return new State(queued.keySet(), pending);
+    }
+
+    private boolean endsWithCutRecord() throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private void write(String record) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(record);
+        } catch (IOException exception) {
+            LOGGER.error("Crawl frontier " + file + " is not written, crawl can not be resumed", exception);
+            writer = null;
+        }
+    }
+
+    /**
+     * Urls seen by the stopped crawl and urls left to parse
+     */
+    public static class State {
+        private final Set<String> seenUrls;
+        private final List<FrontierEntry> pending;
+
+        private State(Set<String> seenUrls, List<FrontierEntry> pending) {
+            this.seenUrls = seenUrls;
+            this.pending = pending;
+        }
+
+        public Set<String> getSeenUrls() {
+            return seenUrls;
+        }
+
+        public List<FrontierEntry> getPending() {
+            return pending;
+        }
+    }
+}
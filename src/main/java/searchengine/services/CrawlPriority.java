@@ -0,0 +1,64 @@
+package searchengine.services;
+
+import searchengine.config.CrawlerSettings;
+import searchengine.config.UrlRule;
+import searchengine.model.Site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Estimated value of a site url for crawl order and crawl limits of the site.
+ * Shallow pages, pages linked from many pages and pages matching boosting rules are crawled first
+ */
+public class CrawlPriority {
+    private static final double DEPTH_WEIGHT = 1;
+    private static final double INBOUND_LINKS_WEIGHT = 0.5;
+
+    private final int maxDepth;
+    private final int maxPages;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Double> boosts = new ArrayList<>();
+
+    public CrawlPriority(Site site, CrawlerSettings settings) {
+        this.maxDepth = site.getMaxDepth() == null ? settings.getMaxDepth() : site.getMaxDepth();
+        this.maxPages = site.getMaxPages() == null ? settings.getMaxPages() : site.getMaxPages();
+        if (site.getUrlRules() != null) {
+            for (UrlRule rule : site.getUrlRules()) {
+                patterns.add(Pattern.compile(rule.getPattern()));
+                boosts.add(rule.getBoost());
+            }
+        }
+    }
+
+    /**
+     * @param depth         number of links followed from the site root
+     * @param inboundLinks  number of parsed pages linking to the url
+     * @return value of the url, url with greater value is crawled earlier
+     */
+    public double value(String url, int depth, int inboundLinks) {
+        double value = INBOUND_LINKS_WEIGHT * inboundLevel(inboundLinks) - DEPTH_WEIGHT * depth;
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(url).find()) {
+                value += boosts.get(i);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Each doubling of inbound links counts once, so value of a queued url changes rarely
+     */
+    public static int inboundLevel(int inboundLinks) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(1, inboundLinks));
+    }
+
+    public boolean allowsDepth(int depth) {
+        return maxDepth <= 0 || depth <= maxDepth;
+    }
+
+    public boolean allowsPages(int pages) {
+        return maxPages <= 0 || pages < maxPages;
+    }
+}
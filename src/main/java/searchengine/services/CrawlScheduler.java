@@ -0,0 +1,117 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared crawl stages for all sites: many fetch threads blocked on network
+ * and CPU-sized pool of workers parsing pages, connected by a bounded queue.
+ * Requests to each host go through its {@link HostRateLimiter}.
+ * All sites are crawled at once, each site having no more than configured number of pages in progress
+ */
+@Component
+public class CrawlScheduler {
+    private final CrawlerSettings settings;
+    private final ExecutorService fetchExecutor;
+    private final ThreadPoolExecutor processExecutor;
+    private final ScheduledExecutorService politenessTimer;
+    private final Map<String, HostRateLimiter> hostRateLimiters = new ConcurrentHashMap<>();
+
+    public CrawlScheduler(CrawlerSettings settings) {
+        this.settings = settings;
+        this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getFetchThreads()),
+                namedThreadFactory("crawl-fetch-"));
+
+        int workers = Math.max(1, settings.getWorkers());
+        this.processExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.getProcessQueueSize())),
+                namedThreadFactory("crawl-worker-"),
+                CrawlScheduler::waitForQueueSpace);
+        this.politenessTimer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("crawl-politeness-"));
+    }
+
+    public SiteCrawl newSiteCrawl(Site site) {
+        return new SiteCrawl(site,
+                new VisitedUrls(settings.getVisitedUrls()),
+                new LemmaDictionary(site),
+                getHostRateLimiter(site),
+                CrawlFrontier.of(settings, site.getId()),
+                new CrawlPriority(site, settings),
+                new NearDuplicates(settings.getDuplicates().getNearDuplicateDistance()),
+                processExecutor,
+                settings.getPerSiteWorkers());
+    }
+
+    /**
+     * Number of requests waiting for politeness limits of the site host
+     */
+    public int getQueueDepth(String siteUrl) {
+        HostRateLimiter hostRateLimiter = hostRateLimiters.get(getHost(siteUrl));
+        return hostRateLimiter == null ? 0 : hostRateLimiter.getQueueDepth();
+    }
+
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> queueDepths = new TreeMap<>();
+        hostRateLimiters.forEach((host, hostRateLimiter) -> queueDepths.put(host, hostRateLimiter.getQueueDepth()));
+        return queueDepths;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        politenessTimer.shutdownNow();
+        fetchExecutor.shutdownNow();
+        processExecutor.shutdownNow();
+    }
+
+    private HostRateLimiter getHostRateLimiter(Site site) {
+        // Sites on the same host share its limits, the last started site crawl sets them
+        double requestsPerSecond = site.getRequestsPerSecond() == null
+                ? settings.getRequestsPerSecond() : site.getRequestsPerSecond();
+        int maxConnections = site.getMaxConnections() == null
+                ? settings.getMaxConnectionsPerHost() : site.getMaxConnections();
+        HostRateLimiter hostRateLimiter = hostRateLimiters.computeIfAbsent(getHost(site.getUrl()), host ->
+                new HostRateLimiter(host, requestsPerSecond, maxConnections, fetchExecutor, politenessTimer));
+        hostRateLimiter.configure(requestsPerSecond, maxConnections);
+        return hostRateLimiter;
+    }
+
+    private static String getHost(String url) {
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host == null ? url : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private static void waitForQueueSpace(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Crawl workers are shut down");
+        }
+
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(exception);
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
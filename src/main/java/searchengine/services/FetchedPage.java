@@ -0,0 +1,60 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+/**
+ * Result of page loading: status code and body, body is null if page was not loaded
+ */
+@Getter
+public class FetchedPage {
+    private final String url;
+    private final int code;
+    private final String body;
+    /**
+     * Delay asked by the server in Retry-After header, -1 if there is no such header
+     */
+    private final long retryAfterMillis;
+    /**
+     * ETag and Last-Modified headers of the response, null if there are no such headers
+     */
+    private final String etag;
+    private final String lastModified;
+
+    public FetchedPage(String url, int code, String body) {
+        this(url, code, body, -1);
+    }
+
+    public FetchedPage(String url, int code, String body, long retryAfterMillis) {
+        this(url, code, body, retryAfterMillis, null, null);
+    }
+
+    public FetchedPage(String url, int code, String body, long retryAfterMillis, String etag, String lastModified) {
+        this.url = url;
+        this.code = code;
+        this.body = body;
+        this.retryAfterMillis = retryAfterMillis;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Checks if the server answered conditional request with 304 Not Modified
+     */
+    public boolean isNotModified() {
+        return code == 304;
+    }
+
+    /**
+     * Checks if the page is gone from the site: 404 Not Found or 410 Gone
+     */
+    public boolean isGone() {
+        return code == 404 || code == 410;
+    }
+
+    /**
+     * Checks if the server asked to slow down: 429 Too Many Requests or 503 Service Unavailable
+     */
+    public boolean isThrottled() {
+        return code == 429 || code == 503;
+    }
+}
@@ -0,0 +1,17 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+/**
+ * Url waiting in crawl frontier and number of links followed from the site root to it
+ */
+@Getter
+public class FrontierEntry {
+    private final String url;
+    private final int depth;
+
+    public FrontierEntry(String url, int depth) {
+        this.url = url;
+        this.depth = depth;
+    }
+}
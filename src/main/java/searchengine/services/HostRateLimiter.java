@@ -0,0 +1,106 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Politeness limits of one host: token bucket of requests per second and max open connections.
+ * Requests wait in the host queue without holding any thread and are handed to fetch threads when allowed
+ */
+public class HostRateLimiter {
+    @Getter
+    private final String host;
+    private final Executor fetchExecutor;
+    private final ScheduledExecutorService timer;
+    private final Queue<Runnable> pendingRequests = new ArrayDeque<>();
+
+    private int maxConnections;
+    private long intervalNanos;
+    private long nextTokenNanos = System.nanoTime();
+    private long blockedUntilNanos = System.nanoTime();
+    private int openConnections;
+    private boolean wakeUpScheduled;
+
+    public HostRateLimiter(String host, double requestsPerSecond, int maxConnections,
+                           Executor fetchExecutor, ScheduledExecutorService timer) {
+        this.host = host;
+        this.fetchExecutor = fetchExecutor;
+        this.timer = timer;
+        configure(requestsPerSecond, maxConnections);
+    }
+
+    /**
+     * Sets limits of the host for a new crawl, replacing limits and crawl delay of the previous one
+     */
+    public synchronized void configure(double requestsPerSecond, int maxConnections) {
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+        this.maxConnections = Math.max(1, maxConnections);
+        drain();
+    }
+
+    /**
+     * Queues request to the host. Request must call {@link #release()} when its connection is closed
+     */
+    public synchronized void submit(Runnable request) {
+        pendingRequests.add(request);
+        drain();
+    }
+
+    public synchronized void release() {
+        openConnections--;
+        drain();
+    }
+
+    /**
+     * Holds all requests to the host for given time, e.g. after 429 or 503 response with Retry-After
+     */
+    public synchronized void pause(long millis) {
+        blockedUntilNanos = Math.max(blockedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Makes requests to the host not more frequent than once per given delay
+     */
+    public synchronized void setMinDelay(long millis) {
+        intervalNanos = Math.max(intervalNanos, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public synchronized int getQueueDepth() {
+        return pendingRequests.size();
+    }
+
+    private void drain() {
+        while (!pendingRequests.isEmpty() && openConnections < maxConnections) {
+            long now = System.nanoTime();
+            long allowedAt = Math.max(nextTokenNanos, blockedUntilNanos);
+            if (allowedAt > now) {
+                scheduleWakeUp(allowedAt - now);
+                return;
+            }
+
+            // Bucket holds one token, so unused time does not turn into a burst of requests
+            nextTokenNanos = now + intervalNanos;
+            openConnections++;
+            fetchExecutor.execute(pendingRequests.poll());
+        }
+    }
+
+    private void scheduleWakeUp(long delayNanos) {
+        if (wakeUpScheduled) {
+            return;
+        }
+
+        wakeUpScheduled = true;
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeUpScheduled = false;
+                drain();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+}
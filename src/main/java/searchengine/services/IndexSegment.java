@@ -0,0 +1,241 @@
+package searchengine.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Immutable part of a site index in a memory-mapped file.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * header:  magic, site id, lemma count, page count, deleted page count, max page id (ints)
+ * lemmas:  lemma id, page count, data offset (long), data length - for each lemma sorted by id
+ * pages:   ids of pages indexed in the segment, sorted, followed by their lengths
+ * deleted: ids of pages deleted from older segments of the site
+ * data:    varint page id gaps of each lemma followed by its ranks (floats)
+ * </pre>
+ */
+public class IndexSegment {
+    public static final String EXTENSION = ".seg";
+
+    private static final int MAGIC = 0x53454733;
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+    private static final int LEMMA_ENTRY_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    private final Path file;
+    private final int sequence;
+    private final ByteBuffer buffer;
+    private final int siteId;
+    private final int lemmaCount;
+    private final int pageCount;
+    private final int deletedCount;
+    private final int maxPageId;
+
+    private IndexSegment(Path file, int sequence, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.sequence = sequence;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an index segment: " + file);
+        }
+        this.siteId = buffer.getInt(4);
+        this.lemmaCount = buffer.getInt(8);
+        this.pageCount = buffer.getInt(12);
+        this.deletedCount = buffer.getInt(16);
+        this.maxPageId = buffer.getInt(20);
+    }
+
+    /**
+     * Writes segment to a temporary file and moves it in place, so readers never see partial segment
+     *
+     * @param postingLists posting lists by lemma id
+     * @param pageLengths  lengths of pages in the segment by page id
+     * @param deletedPages sorted ids of pages deleted from the site
+     * @param maxPageId    high-water mark: max id of site pages in this and older segments
+     */
+    public static IndexSegment write(Path file, int sequence, int siteId,
+                                     SortedMap<Integer, PostingList> postingLists,
+                                     SortedMap<Integer, Integer> pageLengths, int[] deletedPages,
+                                     int maxPageId) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(siteId);
+            out.writeInt(postingLists.size());
+            out.writeInt(pageLengths.size());
+            out.writeInt(deletedPages.length);
+            out.writeInt(maxPageId);
+
+            long dataOffset = HEADER_SIZE + (long) LEMMA_ENTRY_SIZE * postingLists.size()
+                    + (long) Integer.BYTES * (2 * pageLengths.size() + deletedPages.length);
+            CompressedPostingList[] compressedLists = new CompressedPostingList[postingLists.size()];
+            int i = 0;
+            for (Map.Entry<Integer, PostingList> entry : postingLists.entrySet()) {
+                CompressedPostingList compressed = CompressedPostingList.of(entry.getValue());
+                compressedLists[i++] = compressed;
+                out.writeInt(entry.getKey());
+                out.writeInt(compressed.size());
+                out.writeLong(dataOffset);
+                out.writeInt(compressed.getDataLength());
+                dataOffset += compressed.getDataLength() + (long) compressed.size() * Float.BYTES;
+            }
+            if (dataOffset > Integer.MAX_VALUE) {
+                throw new IOException("Index segment is larger than 2 GB: " + file);
+            }
+
+            for (int pageId : pageLengths.keySet()) {
+                out.writeInt(pageId);
+            }
+            for (int pageLength : pageLengths.values()) {
+                out.writeInt(pageLength);
+            }
+            for (int pageId : deletedPages) {
+                out.writeInt(pageId);
+            }
+            for (CompressedPostingList compressed : compressedLists) {
+                compressed.writeTo(out);
+            }
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file, sequence);
+    }
+
+    public static IndexSegment open(Path file, int sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new IndexSegment(file, sequence, buffer);
+        }
+    }
+
+    /**
+     * @return posting list of the lemma, null if the lemma is not in the segment
+     */
+    public PostingList read(int lemmaId) {
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * LEMMA_ENTRY_SIZE;
+            int middleId = buffer.getInt(entry);
+            if (middleId < lemmaId) {
+                low = middle + 1;
+            } else if (middleId > lemmaId) {
+                high = middle - 1;
+            } else {
+                return readPostingList(entry);
+            }
+        }
+        return null;
+    }
+
+    public int getLemmaId(int index) {
+        return buffer.getInt(HEADER_SIZE + index * LEMMA_ENTRY_SIZE);
+    }
+
+    public PostingList readAt(int index) {
+        return readPostingList(HEADER_SIZE + index * LEMMA_ENTRY_SIZE);
+    }
+
+    public int[] getPageIds() {
+        return readInts(pagesOffset(), pageCount);
+    }
+
+    public int[] getPageLengths() {
+        return readInts(pagesOffset() + pageCount * Integer.BYTES, pageCount);
+    }
+
+    /**
+     * @return length of the page, -1 if the page is not in the segment
+     */
+    public int getPageLength(int pageId) {
+        int pagesOffset = pagesOffset();
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = buffer.getInt(pagesOffset + middle * Integer.BYTES);
+            if (middleId < pageId) {
+                low = middle + 1;
+            } else if (middleId > pageId) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(pagesOffset + (pageCount + middle) * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    public int[] getDeletedPages() {
+        return readInts(pagesOffset() + 2 * pageCount * Integer.BYTES, deletedCount);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getSiteId() {
+        return siteId;
+    }
+
+    public int getLemmaCount() {
+        return lemmaCount;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getMaxPageId() {
+        return maxPageId;
+    }
+
+    private PostingList readPostingList(int entry) {
+        int size = buffer.getInt(entry + 4);
+        int offset = (int) buffer.getLong(entry + 8);
+        int ranksOffset = offset + buffer.getInt(entry + 16);
+
+        int[] pageIds = new int[size];
+        float[] ranks = new float[size];
+        int pageId = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(offset++);
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += gap;
+            pageIds[i] = pageId;
+            ranks[i] = buffer.getFloat(ranksOffset + i * Float.BYTES);
+        }
+        return new PostingList(pageIds, ranks);
+    }
+
+    private int pagesOffset() {
+        return HEADER_SIZE + lemmaCount * LEMMA_ENTRY_SIZE;
+    }
+
+    private int[] readInts(int offset, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getInt(offset + i * Integer.BYTES);
+        }
+        return values;
+    }
+}
@@ -3,7 +3,15 @@ package searchengine.services;
 import searchengine.model.RequestAnswer;
 
 public interface IndexingService {
-    RequestAnswer startIndexing();
+    /**
+     * @param incremental keep pages of sites indexed before and index again only changed, new and removed pages
+     */
+    RequestAnswer startIndexing(boolean incremental);
     RequestAnswer stopIndexing();
+
+    /**
+     * Continues indexing of sites stopped by user or by crash from their saved crawl frontier
+     */
+    RequestAnswer resumeIndexing();
     RequestAnswer indexPage(String url);
 }
@@ -5,27 +5,34 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.SitesList;
 import searchengine.dto.IndexRepository;
 import searchengine.dto.LemmaRepository;
+import searchengine.dto.PageContentRepository;
 import searchengine.dto.PageRepository;
+import searchengine.dto.PageState;
 import searchengine.dto.SiteRepository;
 import searchengine.model.*;
 
+import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class IndexingServiceImpl implements IndexingService {
     private static final Logger LOGGER = LogManager.getLogger(IndexingServiceImpl.class);
-    private static final int TERMINATION_AWAIT_TIME_HOURS = 24;
     public static volatile boolean inProgress;
     private static volatile boolean isStopped = false;
     private final SitesList sites;
@@ -34,71 +41,259 @@ public class IndexingServiceImpl implements IndexingService {
     @Autowired
     private PageRepository pageRepository;
     @Autowired
+    private PageContentRepository pageContentRepository;
+    @Autowired
+    private CrawlerSettings crawlerSettings;
+    @Autowired
     private LemmaRepository lemmaRepository;
     @Autowired
     private IndexRepository indexRepository;
     @Autowired
     private TextProcessor textProcessor;
-    private ForkJoinPool pool;
+    @Autowired
+    private LemmaIndexWriter lemmaIndexWriter;
+    @Autowired
+    private CrawlScheduler crawlScheduler;
+    @Autowired
+    private PageFetcher pageFetcher;
+    @Autowired
+    private InvertedIndex invertedIndex;
+    @Autowired
+    private SearchResultCache searchResultCache;
+    @Autowired
+    private SiteGenerations siteGenerations;
+    @Autowired
+    private SitePreflight sitePreflight;
+    @Autowired
+    private UrlCanonicalizer urlCanonicalizer;
+    private final List<SiteCrawl> siteCrawls = new CopyOnWriteArrayList<>();
 
     @Override
-    public RequestAnswer startIndexing() {
+    public RequestAnswer startIndexing(boolean incremental) {
 
         if (inProgress) {
             return new RequestAnswer(false, "Indexing is already started");
         } else {
             inProgress = true;
-            new Thread(this::parseSites).start();
+            new Thread(() -> parseSites(incremental)).start();
             return new RequestAnswer(true);
         }
     }
 
-    private RequestAnswer parseSites() {
+    private RequestAnswer parseSites(boolean incremental) {
+        // All sites are crawled at once on the shared scheduler
+        List<CompletableFuture<SiteCrawl>> completions = new ArrayList<>();
         for (Site site : sites.getSites()) {
-            siteRepository.deleteByUrl(site.getUrl());
+            // Generation left unfinished by a previous run is never made serving
+            siteRepository.findByUrlAndGeneration(site.getUrl(), Generation.BUILDING)
+                    .forEach(siteGenerations::retire);
+
+            // Incremental crawl updates pages of the serving generation in place. Full crawl builds
+            // a new generation while search is served from the old one
+            List<Site> servingSites = siteRepository.findByUrlAndGeneration(site.getUrl(), Generation.SERVING);
+            Site oldSite = incremental && servingSites.size() == 1 ? servingSites.get(0) : null;
+            Site crawledSite = oldSite;
+            if (crawledSite == null) {
+                crawledSite = new Site(site.getUrl(), site.getName());
+                crawledSite.setGeneration(servingSites.isEmpty() ? Generation.SERVING : Generation.BUILDING);
+            }
+            // Pages listed in sitemaps as not modified since the start of the previous finished crawl are skipped,
+            // pages changed while it was running may be loaded before the change
+            Instant previousCrawl = oldSite != null && oldSite.getStatus() == Status.INDEXED
+                    && oldSite.getCrawlStartTime() != null
+                    ? oldSite.getCrawlStartTime().atZone(ZoneId.systemDefault()).toInstant() : null;
+            crawledSite.copyCrawlLimits(site);
+            crawledSite.setStatus(Status.INDEXING);
+            crawledSite.setStatusTime(LocalDateTime.now());
+            crawledSite.setCrawlStartTime(crawledSite.getStatusTime());
+            crawledSite.setLastError(null);
+            Site siteSaved = siteRepository.save(crawledSite);
+
+            Map<String, PageState> knownPages = new HashMap<>();
+            if (oldSite != null) {
+                pageRepository.findStatesBySiteId(siteSaved.getId())
+                        .forEach(pageState -> knownPages.put(pageState.getPath(), pageState));
+            }
+            SiteCrawl siteCrawl = crawlScheduler.newSiteCrawl(siteSaved);
+            siteCrawls.add(siteCrawl);
+            // Sites are not waiting for robots.txt and sitemaps of each other
+            CompletableFuture<SiteCrawl> completion = preflight(siteCrawl, previousCrawl).thenCompose(ignored -> {
+                if (oldSite == null) {
+                    siteCrawl.start(site.getUrl(), pageTaskFactory(siteCrawl));
+                } else {
+                    siteCrawl.startIncremental(site.getUrl(), knownPages, pageTaskFactory(siteCrawl));
+                }
+                return siteCrawl.getCompletion();
+            });
+            completions.add(completion.thenApply(this::finishSiteCrawl));
         }
 
-        for (Site site : sites.getSites()) {
-            site.setStatus(Status.INDEXING);
-            site.setStatusTime(LocalDateTime.now());
-            Site siteSaved = siteRepository.save(site);
+        return awaitSiteCrawls(completions);
+    }
 
-            List<String> controlList = new ArrayList<>();
-            controlList = Collections.synchronizedList(controlList);
-            controlList.add(site.getUrl());
+    @Override
+    public RequestAnswer resumeIndexing() {
+        if (inProgress) {
+            return new RequestAnswer(false, "Indexing is already started");
+        }
 
-            PageExtractorAction parser = new PageExtractorAction(site.getUrl(), controlList, siteSaved,
-                    pageRepository, siteRepository, lemmaRepository, indexRepository, textProcessor);
-            pool = new ForkJoinPool();
-            pool.execute(parser);
-            pool.shutdown();
+        List<Site> stoppedSites = findStoppedSites();
+        if (stoppedSites.isEmpty()) {
+            return new RequestAnswer(false, "No stopped indexing to resume");
+        }
+        inProgress = true;
+        new Thread(() -> resumeSites(stoppedSites)).start();
+        return new RequestAnswer(true);
+    }
 
-            awaitPoolTermination();
+    /**
+     * Latest not finished generation of each configured site having saved crawl frontier
+     */
+    private List<Site> findStoppedSites() {
+        List<Site> stoppedSites = new ArrayList<>();
+        for (Site site : sites.getSites()) {
+            Site stoppedSite = null;
+            for (Site candidate : siteRepository.findByUrl(site.getUrl())) {
+                if (candidate.getGeneration() != Generation.RETIRED && candidate.getStatus() != Status.INDEXED
+                        && CrawlFrontier.of(crawlerSettings, candidate.getId()).exists()
+                        && (stoppedSite == null || candidate.getId() > stoppedSite.getId())) {
+                    stoppedSite = candidate;
+                }
+            }
+            if (stoppedSite != null) {
+                stoppedSite.copyCrawlLimits(site);
+                stoppedSites.add(stoppedSite);
+            }
+        }
+        return stoppedSites;
+    }
 
-            if (isStopped) {
-                isStopped = false;
-                return new RequestAnswer(false, "Indexing stopped by user");
+    private RequestAnswer resumeSites(List<Site> stoppedSites) {
+        List<CompletableFuture<SiteCrawl>> completions = new ArrayList<>();
+        for (Site site : stoppedSites) {
+            CrawlFrontier.State state;
+            try {
+                state = CrawlFrontier.of(crawlerSettings, site.getId()).read();
+            } catch (IOException exception) {
+                LOGGER.error("Crawl frontier of " + site.getUrl() + " is not readable", exception);
+                continue;
             }
 
-            siteSaved.setStatus(Status.INDEXED);
-            siteSaved.setStatusTime(LocalDateTime.now());
-            siteRepository.save(siteSaved);
+            site.updateStatusAndTime(Status.INDEXING);
+            site.setLastError(null);
+            Site siteSaved = siteRepository.save(site);
+
+            Map<String, PageState> knownPages = new HashMap<>();
+            pageRepository.findStatesBySiteId(siteSaved.getId())
+                    .forEach(pageState -> knownPages.put(pageState.getPath(), pageState));
+            SiteCrawl siteCrawl = crawlScheduler.newSiteCrawl(siteSaved);
+            siteCrawls.add(siteCrawl);
+            LOGGER.info("Resuming " + site.getUrl() + ": " + state.getPending().size() + " pages left");
+            CrawlFrontier.State frontierState = state;
+            CompletableFuture<SiteCrawl> completion = sitePreflight
+                    .readRobots(siteSaved, siteCrawl.getHostRateLimiter()).thenCompose(robotsRules -> {
+                        siteCrawl.setRobotsRules(robotsRules);
+                        siteCrawl.resume(frontierState, knownPages, pageTaskFactory(siteCrawl));
+                        return siteCrawl.getCompletion();
+                    });
+            completions.add(completion.thenApply(this::finishSiteCrawl));
         }
 
+        return awaitSiteCrawls(completions);
+    }
+
+    private RequestAnswer awaitSiteCrawls(List<CompletableFuture<SiteCrawl>> completions) {
+        CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0])).join();
+        siteCrawls.clear();
+
         System.out.println("Parsing complete");
+        LOGGER.info(textProcessor.getLemmaCache());
+        LOGGER.info(lemmaIndexWriter);
+        LOGGER.info(searchResultCache);
 
         inProgress = false;
+        if (isStopped) {
+            isStopped = false;
+            return new RequestAnswer(false, "Indexing stopped by user");
+        }
         return new RequestAnswer(true);
     }
 
-    private void awaitPoolTermination() {
+    /**
+     * Reads robots.txt, then sitemaps of the site in its host queue
+     */
+    private CompletableFuture<Void> preflight(SiteCrawl siteCrawl, Instant previousCrawl) {
+        Site site = siteCrawl.getSite();
+        HostRateLimiter hostRateLimiter = siteCrawl.getHostRateLimiter();
+        return sitePreflight.readRobots(site, hostRateLimiter).thenCompose(robotsRules -> {
+            siteCrawl.setRobotsRules(robotsRules);
+            return sitePreflight.readSitemaps(site, robotsRules, hostRateLimiter);
+        }).thenAccept(sitemapPages -> siteCrawl.setSitemapPages(sitemapPages, previousCrawl));
+    }
+
+    private Function<FrontierEntry, PageExtractorAction> pageTaskFactory(SiteCrawl siteCrawl) {
+        return entry -> new PageExtractorAction(entry, siteCrawl,
+                pageRepository, pageContentRepository, siteRepository, pageFetcher, lemmaIndexWriter,
+                textProcessor, crawlerSettings, urlCanonicalizer);
+    }
+
+    private SiteCrawl finishSiteCrawl(SiteCrawl siteCrawl) {
+        Site site = siteCrawl.getSite();
         try {
-            if (!pool.awaitTermination(TERMINATION_AWAIT_TIME_HOURS, TimeUnit.HOURS)) {
-                awaitPoolTermination();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            lemmaIndexWriter.flush(siteCrawl.getLemmaDictionary());
+        } catch (RuntimeException exception) {
+            LOGGER.error("Lemma frequencies flush failed for " + site.getUrl(), exception);
+            siteCrawl.fail("Lemma frequencies were not saved");
+        }
+        if (siteCrawl.isResumed()) {
+            // Frequencies not flushed before a crash are lost, index rows are the source of truth
+            lemmaIndexWriter.recountFrequencies(site.getId());
+        }
+        if (siteCrawl.isIncremental()) {
+            lemmaIndexWriter.deleteUnusedLemmas(site.getId());
+            LOGGER.info("Incremental crawl of " + siteCrawl.getIncrementalSummary());
         }
+        if (siteCrawl.getDuplicatePages() > 0) {
+            LOGGER.info(site.getUrl() + ": " + siteCrawl.getDuplicatePages() + " duplicate pages not stored");
+        }
+
+        if (isStopped) {
+            site.updateStatusAndTime(Status.FAILED);
+            site.setLastError("Indexing stopped by user");
+        } else if (siteCrawl.getLastError() != null) {
+            site.updateStatusAndTime(Status.FAILED);
+            site.setLastError(siteCrawl.getLastError());
+        } else {
+            site.updateStatusAndTime(Status.INDEXED);
+        }
+
+        // Frontier of stopped crawl is kept to resume it
+        if (isStopped) {
+            siteCrawl.getFrontier().close();
+        } else {
+            siteCrawl.getFrontier().delete();
+        }
+
+        if (site.getGeneration() == Generation.BUILDING && isStopped) {
+            siteRepository.save(site);
+            return siteCrawl;
+        }
+        if (site.getGeneration() == Generation.BUILDING && site.getStatus() == Status.FAILED) {
+            // Unfinished generation is dropped, search stays on the serving one
+            siteGenerations.retire(site);
+            siteRepository.findByUrlAndGeneration(site.getUrl(), Generation.SERVING).forEach(servingSite -> {
+                servingSite.setLastError("Reindexing failed: " + site.getLastError());
+                siteRepository.save(servingSite);
+            });
+            return siteCrawl;
+        }
+
+        List<Integer> retiredSiteIds = siteGenerations.swap(site);
+        invertedIndex.writeSegment(site.getId());
+        searchResultCache.invalidateSite(site.getId());
+        retiredSiteIds.forEach(siteGenerations::collect);
+
+        return siteCrawl;
     }
 
     @Override
@@ -110,7 +305,7 @@ public class IndexingServiceImpl implements IndexingService {
             isStopped = true;
         }
 
-        pool.shutdownNow();
+        siteCrawls.forEach(SiteCrawl::stop);
 
         List<Site> siteList = siteRepository.findAll();
         for (Site site : siteList) {
@@ -140,20 +335,20 @@ public class IndexingServiceImpl implements IndexingService {
         siteRepository.save(site);
 
         String pagePath = "/" + url.split("/", 4)[3];
-        List<Page> pageList = pageRepository.findByPath(pagePath);
+        List<Page> pageList = pageRepository.findBySiteIdAndPath(site, pagePath);
         if (pageList.size() > 0) {
             updateLemmasFrequency(pageList.get(0));
-            pageRepository.deleteByPath(pagePath);
+            pageRepository.deleteBySiteIdAndPath(site, pagePath);
+            pageList.forEach(page -> invertedIndex.removePage(page.getSiteId().getId(), page.getId()));
         }
 
-        ArrayList<String> controlList = new ArrayList<>();
         inProgress = true;
-        PageExtractorAction parser = new PageExtractorAction(url, controlList, site,
-                pageRepository, siteRepository, lemmaRepository, indexRepository, textProcessor);
-        parser.compute();
+        SiteCrawl siteCrawl = crawlScheduler.newSiteCrawl(site);
+        siteCrawl.runSinglePage(url, pageTaskFactory(siteCrawl));
+        lemmaIndexWriter.flush(siteCrawl.getLemmaDictionary());
+        invertedIndex.writeSegment(site.getId());
+        searchResultCache.invalidateSite(site.getId());
         inProgress = false;
-        parser.quietlyComplete();
-        parser.join();
 
         site.updateStatusAndTime(statusBeforeIndexing);
         siteRepository.save(site);
@@ -183,7 +378,7 @@ public class IndexingServiceImpl implements IndexingService {
         Site site = null;
 
         for (Site siteFromList : siteListFromDB) {
-            if (siteFromList.getUrl().contains(rootUrl)) {
+            if (siteFromList.getGeneration() == Generation.SERVING && siteFromList.getUrl().contains(rootUrl)) {
                 site = siteFromList;
                 break;
             }
@@ -0,0 +1,477 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search index of all sites: memory-mapped segment files written after each site crawl
+ * and compressed posting lists in memory for pages indexed since then.
+ * Opened after start, sites without segments are read from index table. DB stays the source of truth,
+ * until the index is ready search reads postings from DB
+ */
+@Component
+public class InvertedIndex {
+    private static final Logger LOGGER = LogManager.getLogger(InvertedIndex.class);
+    private static final String SELECT_ALL =
+            "SELECT l.site_id, i.lemma_id, i.page_id, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id";
+    private static final String SELECT_PAGE_LENGTHS = "SELECT site_id, id, token_count FROM page WHERE code = 200";
+    private static final String SELECT_SITE_PAGES =
+            "SELECT id, token_count FROM page WHERE site_id = ? AND code = 200 AND token_count > 0 ORDER BY id";
+    private static final String SELECT_SITE_ROWS_AFTER =
+            "SELECT l.site_id, i.lemma_id, i.page_id, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id "
+                    + "WHERE l.site_id = ? AND i.page_id > ?";
+    private static final String SELECT_PAGE_ROWS =
+            "SELECT l.site_id, i.lemma_id, i.page_id, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id "
+                    + "WHERE i.page_id IN ";
+    private static final String SELECT_RETIRED_SITES = "SELECT id FROM site WHERE generation = 'RETIRED'";
+    private static final int PAGE_CHUNK_SIZE = 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static final String SITE_DIRECTORY_PREFIX = "site-";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchSettings settings;
+    private final Path indexDirectory;
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    // Writes, merges and deletes segment files one at a time
+    private final ExecutorService segmentExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-segments");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Changed by site removal, load started before it is repeated
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean ready;
+
+    public InvertedIndex(JdbcTemplate jdbcTemplate, SearchSettings settings) {
+        // MySQL driver streams rows one by one with this fetch size instead of reading whole table in memory
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.settings = settings;
+        this.indexDirectory = Paths.get(settings.getIndexDirectory());
+    }
+
+    /**
+     * Runs after retired generations are dropped by {@link SiteGenerations#collectRetired}
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 2)
+    public void load() {
+        if (!settings.isInMemoryIndex()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Set<Integer> segmentSites = settings.isSegments() ? openSegments() : Collections.emptySet();
+        long segmentsOpened = System.currentTimeMillis();
+        // Retired generations are being deleted in background, their rows are never searched
+        Set<Integer> skippedSites = new HashSet<>(segmentSites);
+        skippedSites.addAll(jdbcTemplate.queryForList(SELECT_RETIRED_SITES, Integer.class));
+
+        while (!ready) {
+            int loadGeneration = generation.get();
+            Map<Integer, PostingList.Builder> builders = new HashMap<>();
+            Map<Integer, Integer> lemmaSites = new HashMap<>();
+            Map<Integer, Map<Integer, Integer>> pageLengths = new HashMap<>();
+            jdbcTemplate.query(SELECT_PAGE_LENGTHS + excludeSites(" AND ", "site_id", skippedSites), resultSet -> {
+                pageLengths.computeIfAbsent(resultSet.getInt(1), siteId -> new HashMap<>())
+                        .put(resultSet.getInt(2), resultSet.getInt(3));
+            });
+            RowCallbackHandler addRow = resultSet -> {
+                int lemmaId = resultSet.getInt(2);
+                PostingList.Builder builder = builders.get(lemmaId);
+                if (builder == null) {
+                    builder = new PostingList.Builder();
+                    builders.put(lemmaId, builder);
+                    lemmaSites.put(lemmaId, resultSet.getInt(1));
+                }
+                builder.add(resultSet.getInt(3), resultSet.getFloat(4));
+            };
+            jdbcTemplate.query(SELECT_ALL + excludeSites(" WHERE ", "l.site_id", skippedSites), addRow);
+            Map<Integer, List<Integer>> deletedPages = new HashMap<>();
+            for (int siteId : segmentSites) {
+                catchUp(siteId, addRow, pageLengths, deletedPages);
+            }
+
+            synchronized (this) {
+                if (loadGeneration != generation.get()) {
+                    continue;
+                }
+                deletedPages.forEach((siteId, pageIds) -> pageIds.forEach(getSite(siteId)::removePage));
+                // Pages indexed while loading are already here, loaded rows are merged with them
+                builders.forEach((lemmaId, builder) ->
+                        getSite(lemmaSites.get(lemmaId)).addPostingList(lemmaId, builder.build()));
+                pageLengths.forEach((siteId, sitePageLengths) -> {
+                    SiteIndex siteIndex = getSite(siteId);
+                    sitePageLengths.forEach(siteIndex::addPageLength);
+                });
+                ready = true;
+            }
+        }
+
+        LOGGER.info(String.format("Inverted index: %d sites from segments in %d ms, ready in %d ms",
+                segmentSites.size(), segmentsOpened - start, System.currentTimeMillis() - start));
+
+        // Sites loaded from DB get their first segment, sites caught up with DB get a new one
+        sites.keySet().forEach(this::writeSegment);
+    }
+
+    /**
+     * Brings site opened from segments up to DB: pages indexed after its last segment was written are lost
+     * from memory by a crash, a failed or unfinished segment write. Rows of pages above the segment
+     * high-water mark are loaded, as well as rows of older pages missing from segments.
+     * Pages in segments but not in DB are deleted
+     */
+    private void catchUp(int siteId, RowCallbackHandler addRow, Map<Integer, Map<Integer, Integer>> pageLengths,
+                         Map<Integer, List<Integer>> deletedPages) {
+        SiteIndex siteIndex = sites.get(siteId);
+        if (siteIndex == null) {
+            return;
+        }
+        int maxPageId = siteIndex.getSegmentMaxPageId();
+        int[] segmentPageIds = siteIndex.getSegmentPageIds();
+        int[] deleted = siteIndex.getDeletedPages();
+
+        List<Integer> missingPages = new ArrayList<>();
+        Map<Integer, Integer> newPageLengths = new HashMap<>();
+        boolean[] inDatabase = new boolean[segmentPageIds.length];
+        jdbcTemplate.query(SELECT_SITE_PAGES, resultSet -> {
+            int pageId = resultSet.getInt(1);
+            int position = Arrays.binarySearch(segmentPageIds, pageId);
+            if (position >= 0) {
+                inDatabase[position] = true;
+            } else {
+                newPageLengths.put(pageId, resultSet.getInt(2));
+                if (pageId <= maxPageId) {
+                    missingPages.add(pageId);
+                }
+            }
+        }, siteId);
+
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < segmentPageIds.length; i++) {
+            if (!inDatabase[i] && Arrays.binarySearch(deleted, segmentPageIds[i]) < 0) {
+                removed.add(segmentPageIds[i]);
+            }
+        }
+
+        jdbcTemplate.query(SELECT_SITE_ROWS_AFTER, addRow, siteId, maxPageId);
+        for (int from = 0; from < missingPages.size(); from += PAGE_CHUNK_SIZE) {
+            List<Integer> chunk = missingPages.subList(from, Math.min(from + PAGE_CHUNK_SIZE, missingPages.size()));
+            StringJoiner pageIds = new StringJoiner(", ", "(", ")");
+            chunk.forEach(pageId -> pageIds.add(String.valueOf(pageId)));
+            jdbcTemplate.query(SELECT_PAGE_ROWS + pageIds, addRow);
+        }
+
+        pageLengths.computeIfAbsent(siteId, id -> new HashMap<>()).putAll(newPageLengths);
+        deletedPages.put(siteId, removed);
+        if (!newPageLengths.isEmpty() || !removed.isEmpty()) {
+            LOGGER.info("Index of site " + siteId + " caught up with DB: " + newPageLengths.size()
+                    + " pages added, " + removed.size() + " deleted");
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Adds index rows of a page already written to DB
+     *
+     * @param ranks rank of the page for each lemma id
+     */
+    public void addPage(int siteId, int pageId, int pageLength, Map<Integer, Float> ranks) {
+        if (settings.isInMemoryIndex()) {
+            getSite(siteId).addPage(pageId, pageLength, ranks);
+        }
+    }
+
+    /**
+     * Page ids are not reused, so pages deleted from DB are only skipped when posting lists are read
+     * until segments with them are merged
+     */
+    public void removePage(int siteId, int pageId) {
+        if (settings.isInMemoryIndex()) {
+            getSite(siteId).removePage(pageId);
+        }
+    }
+
+    public synchronized void removeSite(int siteId) {
+        generation.incrementAndGet();
+        sites.remove(siteId);
+        if (settings.isSegments()) {
+            segmentExecutor.execute(() -> deleteSiteDirectory(siteId));
+        }
+    }
+
+    /**
+     * Decodes posting lists of given lemmas of the site, skipping deleted pages
+     *
+     * @return posting list for each lemma id, empty list for lemmas without pages
+     */
+    public Map<Integer, PostingList> read(int siteId, Collection<Integer> lemmaIds) {
+        SiteIndex siteIndex = sites.get(siteId);
+        Map<Integer, PostingList> result = new HashMap<>();
+        for (Integer lemmaId : lemmaIds) {
+            result.put(lemmaId, siteIndex == null ? PostingList.EMPTY : siteIndex.read(lemmaId));
+        }
+        return result;
+    }
+
+    /**
+     * @return length of each page of the site, 0 if the page is unknown
+     */
+    public int[] getPageLengths(int siteId, int[] pageIds, int size) {
+        SiteIndex siteIndex = sites.get(siteId);
+        return siteIndex == null ? new int[size] : siteIndex.getPageLengths(pageIds, size);
+    }
+
+    /**
+     * @return page count and average page length of the site
+     */
+    public SiteStatistics getSiteStatistics(int siteId) {
+        SiteIndex siteIndex = sites.get(siteId);
+        return siteIndex == null ? new SiteStatistics(0, 0) : siteIndex.getStatistics();
+    }
+
+    /**
+     * Writes pages indexed since the last segment of the site and pages deleted from it to a new segment
+     * in background, merging segments of the site if there are too many
+     */
+    public void writeSegment(int siteId) {
+        if (!settings.isInMemoryIndex() || !settings.isSegments()) {
+            return;
+        }
+
+        segmentExecutor.execute(() -> {
+            SiteIndex siteIndex = sites.get(siteId);
+            if (siteIndex == null) {
+                return;
+            }
+
+            SortedMap<Integer, PostingList> postingLists = siteIndex.freeze();
+            if (postingLists == null) {
+                return;
+            }
+            try {
+                Path file = createSiteDirectory(siteId).resolve(segmentFileName(siteIndex.nextSequence()));
+                SortedMap<Integer, Integer> frozenPageLengths = siteIndex.getFrozenPageLengths();
+                int maxPageId = frozenPageLengths.isEmpty() ? siteIndex.getSegmentMaxPageId()
+                        : Math.max(siteIndex.getSegmentMaxPageId(), frozenPageLengths.lastKey());
+                siteIndex.install(IndexSegment.write(file, sequenceOf(file), siteId, postingLists,
+                        frozenPageLengths, siteIndex.getDeletedPages(), maxPageId));
+            } catch (IOException | RuntimeException exception) {
+                LOGGER.error("Index segment of site " + siteId + " was not written", exception);
+                siteIndex.unfreeze();
+                return;
+            }
+
+            if (siteIndex.getSegments().size() > settings.getMaxSegmentsPerSite()) {
+                mergeSegments(siteIndex);
+            }
+        });
+    }
+
+    /**
+     * Writes pages indexed since the last segments and waits for queued segment writes,
+     * pages left only in memory are read from DB again on the next start
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (ready) {
+            sites.keySet().forEach(this::writeSegment);
+        }
+        segmentExecutor.shutdown();
+        try {
+            if (!segmentExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Index segments were not written in " + SHUTDOWN_TIMEOUT_SECONDS + " s");
+                segmentExecutor.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            segmentExecutor.shutdownNow();
+        }
+    }
+
+    private void mergeSegments(SiteIndex siteIndex) {
+        List<IndexSegment> segments = siteIndex.getSegments();
+        int[] deletedPages = siteIndex.getDeletedPages();
+
+        SortedMap<Integer, PostingList.Builder> builders = new TreeMap<>();
+        SortedMap<Integer, Integer> pageLengths = new TreeMap<>();
+        int maxPageId = 0;
+        for (IndexSegment segment : segments) {
+            maxPageId = Math.max(maxPageId, segment.getMaxPageId());
+            for (int i = 0; i < segment.getLemmaCount(); i++) {
+                PostingList postingList = segment.readAt(i);
+                PostingList.Builder builder = builders.computeIfAbsent(segment.getLemmaId(i),
+                        lemmaId -> new PostingList.Builder());
+                for (int j = 0; j < postingList.size(); j++) {
+                    if (Arrays.binarySearch(deletedPages, postingList.getPageIds()[j]) < 0) {
+                        builder.add(postingList.getPageIds()[j], postingList.getRanks()[j]);
+                    }
+                }
+            }
+            int[] pageIds = segment.getPageIds();
+            int[] segmentPageLengths = segment.getPageLengths();
+            for (int i = 0; i < pageIds.length; i++) {
+                pageLengths.put(pageIds[i], segmentPageLengths[i]);
+            }
+        }
+
+        // Deletions of pages in merged segments are applied, the rest may concern newer pages
+        List<Integer> appliedDeletions = new ArrayList<>();
+        List<Integer> remainingDeletions = new ArrayList<>();
+        for (int pageId : deletedPages) {
+            (pageLengths.remove(pageId) != null ? appliedDeletions : remainingDeletions).add(pageId);
+        }
+
+        SortedMap<Integer, PostingList> postingLists = new TreeMap<>();
+        builders.forEach((lemmaId, builder) -> {
+            PostingList postingList = builder.build();
+            if (postingList.size() > 0) {
+                postingLists.put(lemmaId, postingList);
+            }
+        });
+
+        int siteId = siteIndex.getSiteId();
+        try {
+            Path file = createSiteDirectory(siteId).resolve(segmentFileName(siteIndex.nextSequence()));
+            IndexSegment merged = IndexSegment.write(file, sequenceOf(file), siteId, postingLists,
+                    pageLengths, toArray(remainingDeletions), maxPageId);
+            siteIndex.replace(segments, merged, toArray(appliedDeletions));
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.error("Index segments of site " + siteId + " were not merged", exception);
+            return;
+        }
+
+        for (IndexSegment segment : segments) {
+            deleteFile(segment.getFile());
+        }
+        LOGGER.info("Merged " + segments.size() + " index segments of site " + siteId);
+    }
+
+    /**
+     * Opens segments of sites present in DB, segments of other sites are deleted
+     *
+     * @return ids of sites with segments
+     */
+    private Set<Integer> openSegments() {
+        Set<Integer> siteIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM site WHERE generation <> 'RETIRED'", Integer.class));
+        Set<Integer> segmentSites = new HashSet<>();
+        if (!Files.isDirectory(indexDirectory)) {
+            return segmentSites;
+        }
+
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(indexDirectory, SITE_DIRECTORY_PREFIX + "*")) {
+            for (Path directory : directories) {
+                int siteId = Integer.parseInt(directory.getFileName().toString().substring(SITE_DIRECTORY_PREFIX.length()));
+                if (!siteIds.contains(siteId)) {
+                    deleteSiteDirectory(siteId);
+                } else if (openSiteSegments(siteId, directory)) {
+                    segmentSites.add(siteId);
+                }
+            }
+        } catch (IOException | NumberFormatException exception) {
+            LOGGER.error("Index directory " + indexDirectory + " was not read", exception);
+        }
+        return segmentSites;
+    }
+
+    private boolean openSiteSegments(int siteId, Path directory) {
+        List<IndexSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + IndexSegment.EXTENSION)) {
+            for (Path file : files) {
+                segments.add(IndexSegment.open(file, sequenceOf(file)));
+            }
+        } catch (IOException | RuntimeException exception) {
+            // Broken segments are not trusted, the site is read from DB and written again
+            LOGGER.error("Index segments of site " + siteId + " were not opened", exception);
+            deleteSiteDirectory(siteId);
+            return false;
+        }
+
+        if (segments.isEmpty()) {
+            return false;
+        }
+        getSite(siteId).open(segments);
+        return true;
+    }
+
+    private static String excludeSites(String keyword, String column, Set<Integer> skippedSites) {
+        if (skippedSites.isEmpty()) {
+            return "";
+        }
+        StringJoiner siteIds = new StringJoiner(", ", keyword + column + " NOT IN (", ")");
+        skippedSites.forEach(siteId -> siteIds.add(String.valueOf(siteId)));
+        return siteIds.toString();
+    }
+
+    private SiteIndex getSite(int siteId) {
+        return sites.computeIfAbsent(siteId, SiteIndex::new);
+    }
+
+    private Path createSiteDirectory(int siteId) throws IOException {
+        return Files.createDirectories(indexDirectory.resolve(SITE_DIRECTORY_PREFIX + siteId));
+    }
+
+    private void deleteSiteDirectory(int siteId) {
+        Path directory = indexDirectory.resolve(SITE_DIRECTORY_PREFIX + siteId);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            files.forEach(InvertedIndex::deleteFile);
+        } catch (IOException exception) {
+            LOGGER.warn("Index directory " + directory + " was not cleared", exception);
+        }
+        deleteFile(directory);
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException exception) {
+            LOGGER.warn("Index file " + file + " was not deleted", exception);
+        }
+    }
+
+    private static String segmentFileName(int sequence) {
+        return String.format("%08d%s", sequence, IndexSegment.EXTENSION);
+    }
+
+    private static int sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - IndexSegment.EXTENSION.length()));
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+}
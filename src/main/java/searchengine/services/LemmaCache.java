@@ -0,0 +1,111 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of morphology results by word form, shared by crawl workers and search.
+ * Split into segments with own lock, each segment evicts its least recently used words
+ */
+public class LemmaCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public LemmaCache(int maxSize) {
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns cached result for the word or loads it. Loader is called outside of locks
+     */
+    public WordForm get(String word, Function<String, WordForm> loader) {
+        Segment segment = segments[Math.floorMod(word.hashCode() ^ (word.hashCode() >>> 16), SEGMENTS)];
+        WordForm wordForm;
+        synchronized (segment) {
+            wordForm = segment.get(word);
+        }
+
+        if (wordForm != null) {
+            hits.increment();
+            return wordForm;
+        }
+
+        misses.increment();
+        wordForm = loader.apply(word);
+        synchronized (segment) {
+            segment.put(word, wordForm);
+        }
+        return wordForm;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lemma cache: size %d, hits %d, misses %d, hit rate %.3f",
+                size(), getHits(), getMisses(), getHitRate());
+    }
+
+    /**
+     * Lemma of a word form and whether the word is functional (preposition, conjunction, interjection)
+     */
+    @Getter
+    public static class WordForm {
+        private final String lemma;
+        private final boolean functional;
+
+        public WordForm(String lemma, boolean functional) {
+            this.lemma = lemma;
+            this.functional = functional;
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<String, WordForm> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WordForm> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import lombok.Getter;
+import searchengine.model.Site;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lemmas of one site known to the current indexing run: lemma id and frequency not yet written to DB
+ */
+public class LemmaDictionary {
+    private static final int FLUSH_INTERVAL_PAGES = 100;
+
+    @Getter
+    private final Site site;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Lemmas of pages removed from the site by id, they may be missing in entries
+    private final Map<Integer, AtomicInteger> removedPages = new ConcurrentHashMap<>();
+    private final AtomicInteger pagesSinceFlush = new AtomicInteger();
+
+    public LemmaDictionary(Site site) {
+        this.site = site;
+    }
+
+    public Entry get(String lemma) {
+        return entries.get(lemma);
+    }
+
+    /**
+     * Adds lemma id resolved from DB, keeping the entry already added by another worker
+     */
+    public Entry put(String lemma, int id) {
+        return entries.computeIfAbsent(lemma, key -> new Entry(id));
+    }
+
+    /**
+     * Registers removal of a page containing the lemmas
+     */
+    public void removePage(Collection<Integer> lemmaIds) {
+        for (int lemmaId : lemmaIds) {
+            removedPages.computeIfAbsent(lemmaId, id -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Registers indexed page
+     *
+     * @return true if pending frequencies should be flushed to DB
+     */
+    public boolean pageIndexed() {
+        // Counter wraps to zero in the same atomic step, so pages indexed meanwhile are not lost
+        return pagesSinceFlush.updateAndGet(pages -> pages + 1 >= FLUSH_INTERVAL_PAGES ? 0 : pages + 1) == 0;
+    }
+
+    /**
+     * Takes pending frequency deltas resetting them to zero
+     *
+     * @return pairs of lemma id and frequency delta
+     */
+    public List<int[]> drainPendingFrequencies() {
+        // Page indexed again with the same lemma gives zero delta and no update
+        Map<Integer, Integer> sums = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            int delta = entry.pendingFrequency.getAndSet(0);
+            if (delta != 0) {
+                sums.merge(entry.id, delta, Integer::sum);
+            }
+        }
+        removedPages.forEach((lemmaId, removed) -> {
+            int delta = removed.getAndSet(0);
+            if (delta != 0) {
+                sums.merge(lemmaId, -delta, Integer::sum);
+            }
+        });
+
+        List<int[]> deltas = new ArrayList<>();
+        sums.forEach((lemmaId, delta) -> {
+            if (delta != 0) {
+                deltas.add(new int[]{lemmaId, delta});
+            }
+        });
+        return deltas;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+        @Getter
+        private final int id;
+        private final AtomicInteger pendingFrequency = new AtomicInteger();
+
+        private Entry(int id) {
+            this.id = id;
+        }
+
+        public void addPage() {
+            pendingFrequency.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.model.Page;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes lemmas and index rows of a page in batches instead of one statement per lemma
+ */
+@Component
+public class LemmaIndexWriter {
+    private static final int CHUNK_SIZE = 500;
+    private static final String INSERT_LEMMAS_PREFIX =
+            "INSERT INTO lemma (site_id, lemma, frequency) VALUES ";
+    private static final String INSERT_LEMMAS_SUFFIX =
+            " ON DUPLICATE KEY UPDATE id = id";
+    private static final String INSERT_INDEX =
+            "INSERT INTO `index` (page_id, lemma_id, `rank`, positions, token_positions) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_FREQUENCY =
+            "UPDATE lemma SET frequency = frequency + ? WHERE id = ?";
+    private static final String SELECT_PAGE_LEMMAS =
+            "SELECT lemma_id FROM `index` WHERE page_id = ?";
+    private static final String DELETE_PAGE =
+            "DELETE FROM page WHERE id = ?";
+    private static final String RECOUNT_FREQUENCIES =
+            "UPDATE lemma SET frequency = (SELECT COUNT(*) FROM `index` WHERE `index`.lemma_id = lemma.id) "
+                    + "WHERE site_id = ?";
+    private static final String DELETE_UNUSED_LEMMAS =
+            "DELETE FROM lemma WHERE site_id = ? AND frequency <= 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InvertedIndex invertedIndex;
+    private final AtomicLong pagesWritten = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    public LemmaIndexWriter(JdbcTemplate jdbcTemplate, InvertedIndex invertedIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.invertedIndex = invertedIndex;
+    }
+
+    /**
+     * Inserts index rows of the page, creating lemmas missing in the dictionary.
+     * Lemma frequencies are accumulated in the dictionary and written by {@link #flush(LemmaDictionary)}
+     *
+     * @param page       saved page
+     * @param lemmas     lemmas of the page and their occurrences on the page
+     * @param dictionary lemmas of the page site
+     */
+    public void writePage(Page page, Map<String, LemmaOccurrences> lemmas, LemmaDictionary dictionary) {
+        long start = System.nanoTime();
+        List<String> missingLemmas = new ArrayList<>();
+        for (String lemma : lemmas.keySet()) {
+            if (!lemma.isBlank() && dictionary.get(lemma) == null) {
+                missingLemmas.add(lemma);
+            }
+        }
+        resolveLemmas(missingLemmas, dictionary);
+
+        List<Object[]> indexRows = new ArrayList<>(lemmas.size());
+        Map<Integer, Float> ranks = new HashMap<>();
+        lemmas.forEach((lemma, occurrences) -> {
+            LemmaDictionary.Entry entry = dictionary.get(lemma);
+            if (entry != null) {
+                float rank = occurrences.getCount();
+                indexRows.add(new Object[]{page.getId(), entry.getId(), rank,
+                        occurrences.encodePositions(), occurrences.encodeTokenPositions()});
+                ranks.put(entry.getId(), rank);
+                entry.addPage();
+            }
+        });
+        jdbcTemplate.batchUpdate(INSERT_INDEX, indexRows);
+        writeNanos.addAndGet(System.nanoTime() - start);
+        pagesWritten.incrementAndGet();
+        rowsWritten.addAndGet(indexRows.size());
+        invertedIndex.addPage(dictionary.getSite().getId(), page.getId(), page.getTokenCount(), ranks);
+
+        if (dictionary.pageIndexed()) {
+            flush(dictionary);
+        }
+    }
+
+    /**
+     * Deletes the page with its index rows, frequencies of its lemmas are decreased on {@link #flush(LemmaDictionary)}.
+     * Page indexed again gets new id, so the search index never mixes its old and new lemmas
+     *
+     * @param pageId     id of the stored page
+     * @param dictionary lemmas of the page site
+     */
+    public void deletePage(int pageId, LemmaDictionary dictionary) {
+        List<Integer> lemmaIds = jdbcTemplate.queryForList(SELECT_PAGE_LEMMAS, Integer.class, pageId);
+        jdbcTemplate.update(DELETE_PAGE, pageId);
+        dictionary.removePage(lemmaIds);
+        invertedIndex.removePage(dictionary.getSite().getId(), pageId);
+    }
+
+    /**
+     * Sets frequencies of site lemmas from index rows
+     */
+    public void recountFrequencies(int siteId) {
+        jdbcTemplate.update(RECOUNT_FREQUENCIES, siteId);
+    }
+
+    /**
+     * Deletes lemmas left without pages after flush of removed pages
+     */
+    public void deleteUnusedLemmas(int siteId) {
+        jdbcTemplate.update(DELETE_UNUSED_LEMMAS, siteId);
+    }
+
+    /**
+     * Writes frequencies accumulated in the dictionary to DB
+     */
+    public void flush(LemmaDictionary dictionary) {
+        List<int[]> deltas = dictionary.drainPendingFrequencies();
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // Sorted order keeps row locks of concurrent flushes in the same order
+        deltas.sort(Comparator.comparingInt(delta -> delta[0]));
+        List<Object[]> updates = new ArrayList<>(deltas.size());
+        for (int[] delta : deltas) {
+            updates.add(new Object[]{delta[1], delta[0]});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_FREQUENCY, updates);
+    }
+
+    /**
+     * Write throughput since start, to compare settings and schema changes on a real database
+     */
+    @Override
+    public String toString() {
+        double seconds = writeNanos.get() / 1e9;
+        return String.format("Lemma index writer: pages %d, index rows %d, write time %.1f s, %.1f pages/s, %.0f rows/s",
+                pagesWritten.get(), rowsWritten.get(), seconds,
+                seconds == 0 ? 0 : pagesWritten.get() / seconds, seconds == 0 ? 0 : rowsWritten.get() / seconds);
+    }
+
+    private void resolveLemmas(List<String> lemmas, LemmaDictionary dictionary) {
+        if (lemmas.isEmpty()) {
+            return;
+        }
+        Collections.sort(lemmas);
+
+        int siteId = dictionary.getSite().getId();
+        for (int from = 0; from < lemmas.size(); from += CHUNK_SIZE) {
+            List<String> chunk = lemmas.subList(from, Math.min(from + CHUNK_SIZE, lemmas.size()));
+            insertLemmas(siteId, chunk);
+            selectLemmaIds(siteId, chunk).forEach(dictionary::put);
+        }
+    }
+
+    private void insertLemmas(int siteId, List<String> chunk) {
+        StringBuilder sql = new StringBuilder(INSERT_LEMMAS_PREFIX);
+        Object[] args = new Object[chunk.size() * 2];
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, 0)" : ", (?, ?, 0)");
+            args[i * 2] = siteId;
+            args[i * 2 + 1] = chunk.get(i);
+        }
+        sql.append(INSERT_LEMMAS_SUFFIX);
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private Map<String, Integer> selectLemmaIds(int siteId, List<String> chunk) {
+        StringBuilder sql = new StringBuilder("SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN (");
+        Object[] args = new Object[chunk.size() + 1];
+        args[0] = siteId;
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            args[i + 1] = chunk.get(i);
+        }
+        sql.append(")");
+
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        jdbcTemplate.query(sql.toString(),
+                resultSet -> {
+                    lemmaIds.put(resultSet.getString("lemma"), resultSet.getInt("id"));
+                },
+                args);
+        return lemmaIds;
+    }
+}
@@ -0,0 +1,113 @@
+package searchengine.services;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Count of a lemma on a page, char offsets of its first occurrences in the page text
+ * and optionally ordinal numbers of all its words in the text
+ */
+public class LemmaOccurrences {
+    /**
+     * Snippet needs only a few occurrences, the rest are counted but not stored
+     */
+    public static final int MAX_POSITIONS = 32;
+    /**
+     * Keeps encoded token positions of a lemma within a BLOB column
+     */
+    public static final int MAX_TOKEN_POSITIONS = 10_000;
+
+    private int count;
+    private int[] positions = new int[2];
+    private int size;
+    private int[] tokenPositions;
+    private int tokenSize;
+
+    public void add() {
+        count++;
+    }
+
+    /**
+     * @param position      index of the first char of the word in the page text
+     * @param tokenPosition ordinal number of the word in the page text, -1 if not stored
+     */
+    public void add(int position, int tokenPosition) {
+        count++;
+        if (size < MAX_POSITIONS) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, Math.min(size * 2, MAX_POSITIONS));
+            }
+            positions[size++] = position;
+        }
+
+        if (tokenPosition >= 0 && tokenSize < MAX_TOKEN_POSITIONS) {
+            if (tokenPositions == null) {
+                tokenPositions = new int[4];
+            } else if (tokenSize == tokenPositions.length) {
+                tokenPositions = Arrays.copyOf(tokenPositions, Math.min(tokenSize * 2, MAX_TOKEN_POSITIONS));
+            }
+            tokenPositions[tokenSize++] = tokenPosition;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Char positions as varint-encoded gaps, null if the lemma is not in the page text
+     */
+    public byte[] encodePositions() {
+        return encode(positions, size);
+    }
+
+    /**
+     * Token positions as varint-encoded gaps, null if they are not stored
+     */
+    public byte[] encodeTokenPositions() {
+        return encode(tokenPositions, tokenSize);
+    }
+
+    public static int[] decodePositions(byte[] data) {
+        if (data == null) {
+            return new int[0];
+        }
+
+        int[] result = new int[data.length];
+        int size = 0;
+        int position = 0;
+        int offset = 0;
+        while (offset < data.length) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && offset < data.length);
+            position += gap;
+            result[size++] = position;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static byte[] encode(int[] values, int size) {
+        if (size == 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 2);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = values[i] - previous;
+            while ((gap & ~0x7F) != 0) {
+                out.write((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            out.write(gap);
+            previous = values[i];
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,174 @@
+package searchengine.services;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SimHash fingerprints of pages stored by one site crawl. Page whose fingerprint differs from a stored one
+ * in no more than max distance bits is a near duplicate, e.g. a print version or a page with another sort order.
+ * Fingerprints are split into max distance + 1 blocks: near duplicates have at least one equal block,
+ * so only fingerprints sharing a block are compared
+ */
+public class NearDuplicates {
+    private static final int SHINGLE_WORDS = 3;
+    // Fingerprint of a few words is too coarse, such pages are never taken as duplicates
+    private static final int MIN_SHINGLES = 8;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Blocks repeated on all pages of a site, they would make different pages of a small site look alike
+    private static final Set<String> BOILERPLATE_TAGS = Set.of("header", "footer", "nav", "aside");
+
+    private final int maxDistance;
+    private final long[] blockMasks;
+    private final List<Map<Long, List<Long>>> blocks = new ArrayList<>();
+
+    /**
+     * @param maxDistance max number of different bits of near duplicates, negative to disable detection
+     */
+    public NearDuplicates(int maxDistance) {
+        this.maxDistance = Math.min(maxDistance, 63);
+        int blockCount = Math.max(0, this.maxDistance + 1);
+        this.blockMasks = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            int from = i * 64 / blockCount;
+            int to = (i + 1) * 64 / blockCount;
+            blockMasks[i] = to - from == 64 ? -1L : ((1L << (to - from)) - 1) << from;
+            blocks.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @return SimHash of word shingles of the page, null if the page has too few words
+     */
+    public static Long fingerprint(String title, String text) {
+        String[] words = ((title == null ? "" : title) + " " + (text == null ? "" : text))
+                .toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        List<String> tokens = new ArrayList<>(words.length);
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+        }
+        int shingles = tokens.size() - SHINGLE_WORDS + 1;
+        if (shingles < MIN_SHINGLES) {
+            return null;
+        }
+
+        int[] weights = new int[64];
+        for (int i = 0; i < shingles; i++) {
+            long hash = shingleHash(tokens, i);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += (hash >>> bit & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Text the fingerprint is taken of: the main element if the page marks one, otherwise the body
+     * without site header, footer, navigation and sidebars
+     */
+    public static String mainText(Document document) {
+        Element content = document.selectFirst("main, [role=main]");
+        if (content == null) {
+            content = document.body();
+        }
+        if (content == null) {
+            return "";
+        }
+
+        StringBuilder text = new StringBuilder();
+        NodeTraversor.filter(new NodeFilter() {
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof Element && BOILERPLATE_TAGS.contains(((Element) node).normalName())) {
+                    return FilterResult.SKIP_ENTIRELY;
+                }
+                if (node instanceof TextNode) {
+                    text.append(((TextNode) node).text()).append(' ');
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                return FilterResult.CONTINUE;
+            }
+        }, content);
+        return text.toString();
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    /**
+     * Stores fingerprint of a new page unless it is a near duplicate of a stored one
+     *
+     * @return false if the page is a near duplicate
+     */
+    public synchronized boolean addIfUnique(long fingerprint) {
+        if (maxDistance < 0) {
+            return true;
+        }
+        for (int i = 0; i < blockMasks.length; i++) {
+            List<Long> candidates = blocks.get(i).get(fingerprint & blockMasks[i]);
+            if (candidates == null) {
+                continue;
+            }
+            for (long candidate : candidates) {
+                if (distance(fingerprint, candidate) <= maxDistance) {
+                    return false;
+                }
+            }
+        }
+        add(fingerprint);
+        return true;
+    }
+
+    /**
+     * Stores fingerprint of a page kept anyway, e.g. of a page stored by the previous crawl
+     */
+    public synchronized void add(long fingerprint) {
+        for (int i = 0; i < blockMasks.length; i++) {
+            blocks.get(i).computeIfAbsent(fingerprint & blockMasks[i], key -> new ArrayList<>(1)).add(fingerprint);
+        }
+    }
+
+    /**
+     * FNV-1a of the shingle words with a final mix, so close shingles give unrelated bits
+     */
+    private static long shingleHash(List<String> tokens, int start) {
+        long hash = FNV_OFFSET;
+        for (int i = start; i < start + SHINGLE_WORDS; i++) {
+            String word = tokens.get(i);
+            for (int j = 0; j < word.length(); j++) {
+                hash = (hash ^ word.charAt(j)) * FNV_PRIME;
+            }
+            hash = (hash ^ ' ') * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
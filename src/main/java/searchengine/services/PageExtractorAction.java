@@ -1,88 +1,139 @@
 package searchengine.services;
 
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
+import lombok.Getter;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import searchengine.dto.IndexRepository;
-import searchengine.dto.LemmaRepository;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.PageContentRepository;
 import searchengine.dto.PageRepository;
+import searchengine.dto.PageState;
 import searchengine.dto.SiteRepository;
-import searchengine.model.Index;
-import searchengine.model.Lemma;
 import searchengine.model.Page;
+import searchengine.model.PageContent;
 import searchengine.model.Site;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.RecursiveAction;
-
-public class PageExtractorAction extends RecursiveAction {
-    private static final String USER_AGENT = "WondererSearchBot";
-    private static final String REFERRER = "http://www.google.com";
-    private static final int MIN_DELAY = 50;
-    private static final int MAX_DELAY = 150;
-
+import java.util.regex.Pattern;
+
+/**
+ * Crawl of one page in two stages: {@link #fetch()} loads the page on a fetch thread,
+ * {@link #run()} parses it, saves lemmas and submits its links on a crawl worker
+ */
+public class PageExtractorAction implements Runnable {
+    // Links to files that are surely not pages are not requested at all, others are checked by Content-Type
+    private static final Pattern BINARY_FILE = Pattern.compile(
+            "(?i).*\\.(jpe?g|png|gif|webp|svg|ico|bmp|tiff?|pdf|docx?|xlsx?|pptx?|zip|rar|7z|gz|tar|exe|dmg|apk"
+                    + "|mp3|mp4|avi|mov|wmv|webm|ogg|wav)$");
+    @Getter
     private final String url;
-    private final List<String> controlList;
+    private final int depth;
+    private final SiteCrawl siteCrawl;
     private final Page page;
     private final Site site;
     private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
     private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final PageFetcher pageFetcher;
+    private final LemmaIndexWriter lemmaIndexWriter;
     private final TextProcessor textProcessor;
-
-    private Connection connection;
-
-    public PageExtractorAction(String url,
-                               List<String> controlList,
-                               Site site,
+    private final CrawlerSettings crawlerSettings;
+    private final UrlCanonicalizer urlCanonicalizer;
+
+    private FetchedPage fetchedPage;
+    private PageState knownPage;
+    @Getter
+    private int fetchAttempts;
+    /**
+     * Page is stored and its links are queued, so resumed crawl does not parse it again
+     */
+    @Getter
+    private boolean processed;
+
+    public PageExtractorAction(FrontierEntry entry,
+                               SiteCrawl siteCrawl,
                                PageRepository pageRepository,
+                               PageContentRepository pageContentRepository,
                                SiteRepository siteRepository,
-                               LemmaRepository lemmaRepository,
-                               IndexRepository indexRepository,
-                               TextProcessor textProcessor) {
-        this.url = url;
-        this.controlList = controlList;
-        this.site = site;
+                               PageFetcher pageFetcher,
+                               LemmaIndexWriter lemmaIndexWriter,
+                               TextProcessor textProcessor,
+                               CrawlerSettings crawlerSettings,
+                               UrlCanonicalizer urlCanonicalizer) {
+        this.url = entry.getUrl();
+        this.depth = entry.getDepth();
+        this.siteCrawl = siteCrawl;
+        this.site = siteCrawl.getSite();
         this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
         this.siteRepository = siteRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
+        this.pageFetcher = pageFetcher;
+        this.lemmaIndexWriter = lemmaIndexWriter;
         this.textProcessor = textProcessor;
+        this.crawlerSettings = crawlerSettings;
+        this.urlCanonicalizer = urlCanonicalizer;
         this.page = new Page();
     }
 
-    @Override
-    protected void compute() {
+    public FetchedPage fetch() {
         if(!IndexingServiceImpl.inProgress) {
+            return null;
+        }
+
+        fetchAttempts++;
+        knownPage = siteCrawl.getKnownPage(getPageUrl());
+        // Stored copy is still compared by content hash, so an unchanged page is not written again
+        fetchedPage = pageFetcher.fetch(url, siteCrawl.isUnfinished(url) ? null : knownPage);
+        return fetchedPage;
+    }
+
+    @Override
+    public void run() {
+        if(!IndexingServiceImpl.inProgress || fetchedPage == null) {
+            return;
+        }
+
+        // Page of the previous crawl is kept if it did not change or server failed to answer
+        if (knownPage != null && (fetchedPage.isNotModified()
+                || fetchedPage.getBody() == null && !fetchedPage.isGone())) {
+            if (fetchedPage.isNotModified()) {
+                siteCrawl.pageUnchanged();
+            }
+            updateSiteStatusTime();
+            processed = true;
             return;
         }
 
         page.setSiteId(site);
         String pageUrl = getPageUrl();
         page.setPath(pageUrl);
-        Document pageAsDocument = getPageAsDocument();
-        int statusCode = getStatusCode();
+        Document pageAsDocument = fetchedPage.getBody() == null ? null : Jsoup.parse(fetchedPage.getBody(), url);
+        int statusCode = fetchedPage.getCode();
         page.setCode(statusCode);
-        page.setContent(pageAsDocument == null ? null : pageAsDocument.toString());
-        pageRepository.save(page);
-
+        page.setEtag(fetchedPage.getEtag());
+        page.setLastModified(fetchedPage.getLastModified());
         if (pageAsDocument != null) {
-            Map<String, Integer> lemmas = textProcessor.countLemmas(pageAsDocument.toString());
-            lemmas.forEach((value, rate) -> {
-                Lemma lemma = new Lemma();
-                lemma.setLemma(value);
-                lemma.setSiteId(site);
-                lemma = addLemmaToDB(lemma);
-                createOrUpdateIndexForLemma(lemma, page, rate);
-            });
+            page.setTitle(pageAsDocument.title());
+            page.setText(pageAsDocument.body() == null ? "" : pageAsDocument.body().text());
+            page.setContentHash(contentHash(page.getTitle(), page.getText()));
+            page.setSimHash(NearDuplicates.fingerprint(page.getTitle(), NearDuplicates.mainText(pageAsDocument)));
+        }
+
+        if (statusCode == 200 && pageAsDocument != null && isDuplicate(pageAsDocument)) {
+            // Links of a duplicate are still followed, they may lead to pages not linked elsewhere
+            siteCrawl.pageDuplicate();
+        } else if (knownPage != null && page.getContentHash() != null
+                && page.getContentHash().equals(knownPage.getContentHash())) {
+            pageRepository.updateValidators(knownPage.getId(), page.getEtag(), page.getLastModified());
+            siteCrawl.pageUnchanged();
+        } else {
+            savePage(pageAsDocument);
         }
 
         updateSiteStatusTime();
@@ -92,6 +143,10 @@ public class PageExtractorAction extends RecursiveAction {
         }
 
         if (statusCode != 200 || pageAsDocument == null) {
+            if (url.equals(site.getUrl())) {
+                siteCrawl.fail("Site main page is not available");
+            }
+            processed = true;
             return;
         }
 
@@ -99,72 +154,89 @@ public class PageExtractorAction extends RecursiveAction {
         HashSet<String> validLinks = validateLinks(linkElements);
 
         for (String link : validLinks) {
-            controlList.add(link);
-            PageExtractorAction task = new PageExtractorAction(link, controlList, site,
-                    pageRepository, siteRepository, lemmaRepository, indexRepository, textProcessor);
-            task.fork();
+            siteCrawl.submit(link, depth + 1);
         }
+        processed = true;
     }
 
-    private void createOrUpdateIndexForLemma(Lemma lemma, Page page, int rate) {
-            Index index = new Index();
-            index.setLemmaId(lemma);
-            index.setPageId(page);
-            index.setRank(rate);
-            lemmaRepository.save(lemma);
-            indexRepository.save(index);
-    }
-
-    private Lemma addLemmaToDB(Lemma lemma) {
-        List<Lemma> lemmaList = lemmaRepository.findByLemma(lemma.getLemma());
+    /**
+     * New page is a duplicate if it names another page of the site as canonical or if it is a near duplicate
+     * of a stored page. The root page and stored pages are always kept
+     */
+    private boolean isDuplicate(Document pageAsDocument) {
+        if (depth == 0) {
+            return false;
+        }
+        if (knownPage != null) {
+            if (page.getSimHash() != null) {
+                siteCrawl.getNearDuplicates().add(page.getSimHash());
+            }
+            return false;
+        }
 
-        if (lemmaList.size() == 0) {
-            lemma.setFrequency(1);
-            return lemmaRepository.save(lemma);
-        } else {
-            Lemma lemmaFromDb = lemmaList.get(0);
-            lemmaFromDb.setFrequency(lemmaFromDb.getFrequency() + 1);
-            return lemmaRepository.save(lemmaFromDb);
+        if (crawlerSettings.getDuplicates().isRelCanonical()) {
+            Element canonicalLink = pageAsDocument.selectFirst("link[rel=canonical][href]");
+            String canonicalUrl = canonicalLink == null ? ""
+                    : urlCanonicalizer.canonicalize(canonicalLink.absUrl("href"));
+            if (!canonicalUrl.isEmpty() && canonicalUrl.startsWith(site.getUrl())
+                    && !VisitedUrls.normalize(canonicalUrl).equals(VisitedUrls.normalize(url))) {
+                if (siteCrawl.isAllowed(canonicalUrl) && siteCrawl.getVisitedUrls().claim(canonicalUrl)) {
+                    siteCrawl.submit(canonicalUrl, depth);
+                }
+                return true;
+            }
         }
-    }
 
-    private String getPageUrl() {
-        String pageUrl = url.replace(site.getUrl(), "");
-        pageUrl = pageUrl.isBlank() ? url : pageUrl;
-        return pageUrl;
+        return page.getSimHash() != null && !siteCrawl.getNearDuplicates().addIfUnique(page.getSimHash());
     }
 
-    private Document getPageAsDocument() {
-        connection = Jsoup.connect(url)
-                .userAgent(USER_AGENT)
-                .referrer(REFERRER);
+    private void savePage(Document pageAsDocument) {
+        if (knownPage != null) {
+            lemmaIndexWriter.deletePage(knownPage.getId(), siteCrawl.getLemmaDictionary());
+            if (pageAsDocument == null) {
+                siteCrawl.pageRemoved();
+            } else {
+                siteCrawl.pageChanged();
+            }
+        }
 
-        System.out.println("Parsing: " + url);
-        Document document;
+        Map<String, LemmaOccurrences> lemmas = null;
+        if (pageAsDocument != null) {
+            lemmas = textProcessor.countLemmas(page.getTitle(), page.getText(), crawlerSettings.isTokenPositions());
+            // Functional and unknown words share the empty lemma, they are not indexed and do not make the page longer
+            page.setTokenCount(lemmas.entrySet().stream().filter(entry -> !entry.getKey().isEmpty())
+                    .mapToInt(entry -> entry.getValue().getCount()).sum());
+        }
+        pageRepository.save(page);
 
-        try {
-            Thread.sleep((int) ((Math.random() * MIN_DELAY) + MAX_DELAY));
-            document = connection.get();
-        } catch (HttpStatusException statusException) {
-            page.setCode(statusException.getStatusCode());
-            System.out.println(url + " - STATUS FAILURE");
-            return null;
-        } catch (IOException ioException) {
-            System.out.println(url + " - ILLEGAL ARGUMENT");
-            return null;
-        } catch (InterruptedException interruptedException) {
-            throw new RuntimeException(interruptedException);
+        if (pageAsDocument != null && crawlerSettings.isStoreRawHtml()) {
+            pageContentRepository.save(new PageContent(page, fetchedPage.getBody()));
         }
 
-        return document;
+        if (lemmas != null) {
+            lemmaIndexWriter.writePage(page, lemmas, siteCrawl.getLemmaDictionary());
+        }
     }
 
-    private int getStatusCode() {
-        int statusCode = 0;
-        if (page.getCode() == 0) {
-            statusCode = connection.response().statusCode();
+    private static String contentHash(String title, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((title == null ? "" : title).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return statusCode;
+    }
+
+    private String getPageUrl() {
+        return siteCrawl.getPath(url);
     }
 
     private void updateSiteStatusTime() {
@@ -174,48 +246,55 @@ public class PageExtractorAction extends RecursiveAction {
 
     private HashSet<String> validateLinks(Elements linkElements) {
         HashSet<String> validLinks = new HashSet<>();
+        HashSet<String> pageLinks = new HashSet<>();
 
         for (Element link : linkElements) {
             String href = link.absUrl("href");
 
             // Check if link is contains space (link is not valid in this case)
-            if (href.contains(" ")) {
+            if (href.isEmpty() || href.contains(" ")) {
+                continue;
+            }
+            href = urlCanonicalizer.canonicalize(href);
+
+            // Link to a part of this page
+            if (VisitedUrls.normalize(href).equals(VisitedUrls.normalize(url))) {
                 continue;
             }
 
             // Check if url starts with the same "http" ot "https" protocol
-            // Then check if amy other thread already parsed this link
             String httpSVar = url.split("://", 2)[0];
             if (!href.startsWith(httpSVar)) {
                 continue;
-            } else if (controlList.contains(href)) {
-                continue;
             }
 
-            if (href.split("/").length <= url.split("/").length) {
+            if (BINARY_FILE.matcher(href.split("\\?", 2)[0]).matches()) {
                 continue;
             }
 
-            if (href.endsWith(".jpg")) {
+            if (!siteCrawl.isAllowed(href)) {
                 continue;
             }
 
             // Check if link is external by checking its general name
             // like "skillbox.ru"
-            // Then check if this link is internal service
             boolean linkIsExternal = false;
-            boolean linkIsInnerService = false;
             String[] split = href.split("/");
-            String rootGeneralNamePart = controlList.get(0).split("/")[2];
+            String rootGeneralNamePart = site.getUrl().split("/")[2];
             rootGeneralNamePart = rootGeneralNamePart.replace("www.", "");
             if (split.length > 2) {
                 linkIsExternal = !split[2].equals(rootGeneralNamePart)
                         && !split[2].equals("www." + rootGeneralNamePart);
-                linkIsInnerService = split[split.length - 1].contains("#");
             }
 
-            if (!linkIsExternal && !linkIsInnerService) {
-                validLinks.add(href);
+            // Claim link last, so any other thread will not parse it
+            if (!linkIsExternal && pageLinks.add(href)) {
+                if (siteCrawl.getVisitedUrls().claim(href)) {
+                    validLinks.add(href);
+                } else {
+                    // Page waiting in the queue is taken earlier when more pages link to it
+                    siteCrawl.linkFound(href);
+                }
             }
 
         }
@@ -0,0 +1,158 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.JsoupConnectionSettings;
+import searchengine.dto.PageState;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Loads pages over HTTP. Runs on fetch threads, page parsing is left to crawl workers.
+ * Request rate is limited by {@link HostRateLimiter} before the page gets here.
+ * Headers are checked before the body is read: response of a wrong type or too long is closed unread
+ */
+@Component
+public class PageFetcher {
+    private static final Logger LOGGER = LogManager.getLogger(PageFetcher.class);
+    private static final Pattern HTML_TYPES = Pattern.compile("(text/html|application/xhtml\\+xml)(;.*)?");
+    private static final Pattern TEXT_TYPES = Pattern.compile("(text/.*|application/(.*\\+)?xml)(;.*)?");
+
+    private final JsoupConnectionSettings connectionSettings;
+    private final int maxBodySize;
+    private final int maxResourceSize;
+
+    public PageFetcher(JsoupConnectionSettings connectionSettings, CrawlerSettings crawlerSettings) {
+        this.connectionSettings = connectionSettings;
+        this.maxBodySize = crawlerSettings.getMaxBodySize();
+        this.maxResourceSize = crawlerSettings.getMaxResourceSize();
+    }
+
+    /**
+     * Loads a text resource of the site, e.g. robots.txt or sitemap, with its own size limit
+     */
+    public FetchedPage fetch(String url) {
+        return fetch(url, null, TEXT_TYPES, maxResourceSize);
+    }
+
+    /**
+     * Loads the page, asking the server to answer 304 Not Modified if it did not change since the last crawl
+     *
+     * @param knownPage stored state of the page, null if the page is new
+     * @return page with body, or only with status code if the response is not HTML
+     */
+    public FetchedPage fetch(String url, PageState knownPage) {
+        return fetch(url, knownPage, HTML_TYPES, maxBodySize);
+    }
+
+    private FetchedPage fetch(String url, PageState knownPage, Pattern acceptedTypes, int maxSize) {
+        // Body is read by a size-limited stream only after headers are checked
+        Connection connection = Jsoup.connect(url)
+                .userAgent(connectionSettings.getUserAgent())
+                .referrer(connectionSettings.getReferrer())
+                .ignoreHttpErrors(true)
+                .ignoreContentType(true)
+                .maxBodySize(maxSize);
+        if (knownPage != null && knownPage.getEtag() != null) {
+            connection.header("If-None-Match", knownPage.getEtag());
+        }
+        if (knownPage != null && knownPage.getLastModified() != null) {
+            connection.header("If-Modified-Since", knownPage.getLastModified());
+        }
+
+        LOGGER.debug("Loading " + url);
+
+        try {
+            Connection.Response response = connection.execute();
+            if (response.statusCode() >= 400) {
+                LOGGER.debug(url + " answered code " + response.statusCode());
+                return new FetchedPage(url, response.statusCode(), null,
+                        parseRetryAfter(response.header("Retry-After")));
+            }
+            if (response.statusCode() == 304) {
+                return new FetchedPage(url, 304, null, -1, response.header("ETag"), response.header("Last-Modified"));
+            }
+            String skipReason = getSkipReason(response, acceptedTypes, maxSize);
+            if (skipReason != null) {
+                LOGGER.info(url + " skipped: " + skipReason);
+                closeUnread(response);
+                return new FetchedPage(url, response.statusCode(), null, -1,
+                        response.header("ETag"), response.header("Last-Modified"));
+            }
+            String body = response.body();
+            if (maxSize > 0 && response.bodyAsBytes().length >= maxSize) {
+                LOGGER.warn(url + " is cut at " + maxSize + " bytes");
+            }
+            return new FetchedPage(url, response.statusCode(), body, -1,
+                    response.header("ETag"), response.header("Last-Modified"));
+        } catch (IOException ioException) {
+            LOGGER.warn(url + " is not loaded: " + ioException.getMessage());
+            return new FetchedPage(url, 0, null);
+        }
+    }
+
+    /**
+     * @return why the body should not be read, null if it should
+     */
+    private String getSkipReason(Connection.Response response, Pattern acceptedTypes, int maxSize) {
+        String contentType = response.contentType();
+        // Jsoup takes a response without Content-Type as HTML too
+        if (contentType != null && !acceptedTypes.matcher(contentType.trim().toLowerCase(Locale.ROOT)).matches()) {
+            return "content type " + contentType;
+        }
+
+        String contentLength = response.header("Content-Length");
+        if (maxSize > 0 && contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxSize) {
+                    return "content length " + contentLength;
+                }
+            } catch (NumberFormatException ignored) {
+                // Invalid length, body is cut by max body size anyway
+            }
+        }
+        return null;
+    }
+
+    private static void closeUnread(Connection.Response response) {
+        try {
+            response.bodyStream().close();
+        } catch (IOException | RuntimeException ignored) {
+            // Connection is dropped anyway
+        }
+    }
+
+    /**
+     * Parses Retry-After header given either in seconds or as HTTP date
+     *
+     * @return delay in milliseconds or -1 if header is absent or invalid
+     */
+    private long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException ignored) {
+            // Not a number of seconds, may be a date
+        }
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pages containing all lemmas of a query and absolute relevance of each page
+ */
+@Getter
+public class PageMatches {
+    public static final PageMatches EMPTY = new PageMatches(new int[0], null, new double[0], 0);
+
+    private final int[] pageIds;
+    /**
+     * Rank of each query lemma on each page, ranks[lemma][page], null for joined matches of several sites
+     */
+    private final float[][] ranks;
+    private final double[] relevance;
+    private final int size;
+
+    public PageMatches(int[] pageIds, float[][] ranks, double[] relevance, int size) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.relevance = relevance;
+        this.size = size;
+    }
+
+    /**
+     * Intersects posting lists in one pass, collecting ranks of each page found in all lists
+     * in order of the given lists. Relevance is set by {@link #score}
+     */
+    public static PageMatches intersect(List<PostingList> postingLists) {
+        if (postingLists.isEmpty()) {
+            return EMPTY;
+        }
+
+        // Shortest list gives candidates, longer lists are only searched
+        Integer[] order = new Integer[postingLists.size()];
+        for (int l = 0; l < order.length; l++) {
+            order[l] = l;
+        }
+        Arrays.sort(order, Comparator.comparingInt(l -> postingLists.get(l).size()));
+        PostingList first = postingLists.get(order[0]);
+        int[] cursors = new int[order.length];
+        int[] positions = new int[order.length];
+
+        int[] pageIds = new int[first.size()];
+        float[][] ranks = new float[order.length][first.size()];
+        int size = 0;
+
+        candidates:
+        for (int i = 0; i < first.size(); i++) {
+            int pageId = first.getPageIds()[i];
+            positions[0] = i;
+
+            for (int l = 1; l < order.length; l++) {
+                PostingList list = postingLists.get(order[l]);
+                int position = advance(list.getPageIds(), cursors[l], pageId);
+                cursors[l] = position;
+                if (position == list.size()) {
+                    break candidates;
+                }
+                if (list.getPageIds()[position] != pageId) {
+                    continue candidates;
+                }
+                positions[l] = position;
+            }
+
+            pageIds[size] = pageId;
+            for (int l = 0; l < order.length; l++) {
+                ranks[order[l]][size] = postingLists.get(order[l]).getRanks()[positions[l]];
+            }
+            size++;
+        }
+
+        return new PageMatches(pageIds, ranks, new double[size], size);
+    }
+
+    /**
+     * Sets relevance of pages matched in one site
+     *
+     * @param documentFrequencies number of site pages with each query lemma
+     * @param pageLengths         length of each page, null if not used by the scorer
+     * @param statistics          site statistics, null if not used by the scorer
+     */
+    public void score(Scorer scorer, int[] documentFrequencies, int[] pageLengths, SiteStatistics statistics) {
+        Arrays.fill(relevance, 0, size, 0);
+        scorer.score(ranks, documentFrequencies, pageLengths, size, statistics, relevance);
+    }
+
+    /**
+     * Joins matches of different sites, their page ids do not overlap
+     */
+    public static PageMatches concat(List<PageMatches> matchesList) {
+        int total = 0;
+        for (PageMatches matches : matchesList) {
+            total += matches.size;
+        }
+
+        int[] pageIds = new int[total];
+        double[] relevance = new double[total];
+        int size = 0;
+        for (PageMatches matches : matchesList) {
+            System.arraycopy(matches.pageIds, 0, pageIds, size, matches.size);
+            System.arraycopy(matches.relevance, 0, relevance, size, matches.size);
+            size += matches.size;
+        }
+        return new PageMatches(pageIds, null, relevance, size);
+    }
+
+    public double maxRelevance() {
+        double max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, relevance[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Finds first position in sorted array from given one with value not less than target.
+     * Exponential steps first, so long lists are skipped fast
+     */
+    private static int advance(int[] sortedIds, int from, int target) {
+        int length = sortedIds.length;
+        if (from >= length || sortedIds[from] >= target) {
+            return from;
+        }
+
+        int bound = 1;
+        while (from + bound < length && sortedIds[from + bound] < target) {
+            bound <<= 1;
+        }
+
+        int low = from + (bound >> 1) + 1;
+        int high = Math.min(from + bound + 1, length);
+        int position = Arrays.binarySearch(sortedIds, low, high, target);
+        return position >= 0 ? position : -position - 1;
+    }
+}
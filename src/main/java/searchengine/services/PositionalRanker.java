@@ -0,0 +1,161 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.*;
+
+/**
+ * Reranks best pages of a query by word positions read only for them: pages without every quoted phrase
+ * are dropped, pages with query words close to each other are boosted.
+ * Pages indexed without word positions are kept as ranked
+ */
+@Component
+public class PositionalRanker {
+    private final PostingListReader postingListReader;
+    private final int depth;
+    private final double proximityWeight;
+
+    public PositionalRanker(PostingListReader postingListReader, SearchSettings settings) {
+        this.postingListReader = postingListReader;
+        this.depth = settings.getPositional().getDepth();
+        this.proximityWeight = settings.getPositional().getProximityWeight();
+    }
+
+    /**
+     * @param ranked      pages ranked by scorer
+     * @param lemmasById  query lemmas of all sites by lemma id
+     * @param phrases     lemmas of quoted phrases in word order, empty lemma stands for a stop word
+     * @return pages in new order; with phrases only pages of the checked depth containing them are left
+     */
+    public RankedPages rerank(RankedPages ranked, Map<Integer, String> lemmasById, List<List<String>> phrases) {
+        int checked = Math.min(depth, ranked.size());
+        List<Integer> pageIds = new ArrayList<>(checked);
+        for (int i = 0; i < checked; i++) {
+            pageIds.add(ranked.getPageIds()[i]);
+        }
+        Map<Integer, Map<Integer, int[]>> tokenPositions =
+                postingListReader.readTokenPositions(pageIds, lemmasById.keySet());
+
+        Set<String> queryLemmas = new HashSet<>(lemmasById.values());
+        TopPages topPages = new TopPages(checked);
+        for (int i = 0; i < checked; i++) {
+            int pageId = ranked.getPageIds()[i];
+            Map<Integer, int[]> pagePositions = tokenPositions.get(pageId);
+            if (pagePositions == null) {
+                topPages.offer(pageId, ranked.getScores()[i]);
+                continue;
+            }
+
+            Map<String, int[]> positions = new HashMap<>();
+            pagePositions.forEach((lemmaId, lemmaPositions) -> positions.put(lemmasById.get(lemmaId), lemmaPositions));
+            if (containsPhrases(positions, phrases)) {
+                topPages.offer(pageId, ranked.getScores()[i] * proximityBoost(positions, queryLemmas));
+            }
+        }
+        topPages.sortDescending();
+
+        boolean filtered = !phrases.isEmpty();
+        int size = filtered ? topPages.size() : ranked.size();
+        int[] resultIds = new int[size];
+        double[] resultScores = new double[size];
+        double maxRelevance = filtered ? 0 : ranked.getMaxRelevance();
+        for (int i = 0; i < topPages.size(); i++) {
+            resultIds[i] = topPages.getPageId(i);
+            resultScores[i] = topPages.getScore(i);
+            maxRelevance = Math.max(maxRelevance, resultScores[i]);
+        }
+        // Boost never lowers a score, so unchecked pages stay below the checked ones
+        for (int i = topPages.size(); i < size; i++) {
+            resultIds[i] = ranked.getPageIds()[i];
+            resultScores[i] = ranked.getScores()[i];
+        }
+        return new RankedPages(resultIds, resultScores, filtered ? size : ranked.getTotal(),
+                maxRelevance, ranked.getSiteIds());
+    }
+
+    private static boolean containsPhrases(Map<String, int[]> positions, List<List<String>> phrases) {
+        for (List<String> phrase : phrases) {
+            if (!containsPhrase(positions, phrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks for each word of the phrase at its offset from occurrences of the first word
+     */
+    static boolean containsPhrase(Map<String, int[]> positions, List<String> phrase) {
+        int anchor = 0;
+        while (phrase.get(anchor).isEmpty()) {
+            anchor++;
+        }
+        int[] anchorPositions = positions.get(phrase.get(anchor));
+        if (anchorPositions == null) {
+            return false;
+        }
+
+        for (int position : anchorPositions) {
+            boolean matched = true;
+            for (int j = anchor + 1; j < phrase.size() && matched; j++) {
+                if (phrase.get(j).isEmpty()) {
+                    continue;
+                }
+                int[] wordPositions = positions.get(phrase.get(j));
+                matched = wordPositions != null && Arrays.binarySearch(wordPositions, position - anchor + j) >= 0;
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Boost by the shortest part of the text containing every query lemma found on the page,
+     * from 1 for words far apart to 1 + proximity weight for words next to each other
+     */
+    double proximityBoost(Map<String, int[]> positions, Set<String> queryLemmas) {
+        List<int[]> lists = new ArrayList<>();
+        int total = 0;
+        for (String lemma : queryLemmas) {
+            int[] lemmaPositions = positions.get(lemma);
+            if (lemmaPositions != null && lemmaPositions.length > 0) {
+                lists.add(lemmaPositions);
+                total += lemmaPositions.length;
+            }
+        }
+        int lemmaCount = lists.size();
+        if (lemmaCount < 2) {
+            return 1;
+        }
+
+        // Position in high bits, lemma number in low bits: one primitive sort merges all lists
+        long[] occurrences = new long[total];
+        int size = 0;
+        for (int i = 0; i < lemmaCount; i++) {
+            for (int position : lists.get(i)) {
+                occurrences[size++] = ((long) position << 32) | i;
+            }
+        }
+        Arrays.sort(occurrences);
+
+        int[] inWindow = new int[lemmaCount];
+        int covered = 0;
+        int span = Integer.MAX_VALUE;
+        int start = 0;
+        for (long occurrence : occurrences) {
+            if (inWindow[(int) occurrence]++ == 0) {
+                covered++;
+            }
+            while (covered == lemmaCount) {
+                span = Math.min(span, (int) (occurrence >> 32) - (int) (occurrences[start] >> 32) + 1);
+                if (--inWindow[(int) occurrences[start++]] == 0) {
+                    covered--;
+                }
+            }
+        }
+        return 1 + proximityWeight * (lemmaCount - 1) / (span - 1);
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Pages containing a lemma: page ids sorted ascending and rank of the lemma on each page
+ */
+@Getter
+public class PostingList {
+    public static final PostingList EMPTY = new PostingList(new int[0], new float[0]);
+
+    private final int[] pageIds;
+    private final float[] ranks;
+
+    public PostingList(int[] pageIds, float[] ranks) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * Collects posting list from rows read in any page order
+     */
+    public static class Builder {
+        private int[] pageIds = new int[16];
+        private float[] ranks = new float[16];
+        private int size;
+        private boolean sorted = true;
+
+        public void add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            if (size > 0 && pageIds[size - 1] >= pageId) {
+                sorted = false;
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+
+        public PostingList build() {
+            int[] resultIds = Arrays.copyOf(pageIds, size);
+            float[] resultRanks = Arrays.copyOf(ranks, size);
+            if (!sorted) {
+                sortByPageId(resultIds, resultRanks);
+            }
+            return new PostingList(resultIds, resultRanks);
+        }
+
+        private static void sortByPageId(int[] ids, float[] ranks) {
+            // Page id in high bits, index in low bits: one primitive sort keeps ranks paired
+            long[] keys = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                keys[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            float[] ranksCopy = ranks.clone();
+            for (int i = 0; i < keys.length; i++) {
+                ids[i] = (int) (keys[i] >> 32);
+                ranks[i] = ranksCopy[(int) keys[i]];
+            }
+        }
+    }
+}
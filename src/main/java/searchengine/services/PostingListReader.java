@@ -0,0 +1,155 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Reads posting lists of lemmas from index table and page statistics in bulk
+ */
+@Component
+public class PostingListReader {
+    private static final int CHUNK_SIZE = 1000;
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostingListReader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reads page ids and ranks of all given lemmas with one query
+     *
+     * @return posting list for each lemma id, empty list for lemmas without pages
+     */
+    public Map<Integer, PostingList> read(Collection<Integer> lemmaIds) {
+        Map<Integer, PostingList> postingLists = new HashMap<>();
+        if (lemmaIds.isEmpty()) {
+            return postingLists;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT lemma_id, page_id, `rank` FROM `index` WHERE lemma_id IN (");
+        Object[] args = lemmaIds.toArray();
+        for (int i = 0; i < args.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ORDER BY lemma_id, page_id");
+
+        Map<Integer, PostingList.Builder> builders = new HashMap<>();
+        jdbcTemplate.query(sql.toString(),
+                resultSet -> {
+                    builders.computeIfAbsent(resultSet.getInt(1), lemmaId -> new PostingList.Builder())
+                            .add(resultSet.getInt(2), resultSet.getFloat(3));
+                },
+                args);
+
+        for (Integer lemmaId : lemmaIds) {
+            PostingList.Builder builder = builders.get(lemmaId);
+            postingLists.put(lemmaId, builder == null ? PostingList.EMPTY : builder.build());
+        }
+        return postingLists;
+    }
+
+    /**
+     * @return length of each page, 0 if the page is not found
+     */
+    public int[] readPageLengths(int[] pageIds, int size) {
+        Map<Integer, Integer> lengths = new HashMap<>();
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            int to = Math.min(from + CHUNK_SIZE, size);
+            StringBuilder sql = new StringBuilder("SELECT id, token_count FROM page WHERE id IN (");
+            Object[] args = new Object[to - from];
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+                args[i - from] = pageIds[i];
+            }
+            sql.append(")");
+            jdbcTemplate.query(sql.toString(),
+                    resultSet -> {
+                        lengths.put(resultSet.getInt(1), resultSet.getInt(2));
+                    },
+                    args);
+        }
+
+        int[] pageLengths = new int[size];
+        for (int i = 0; i < size; i++) {
+            pageLengths[i] = lengths.getOrDefault(pageIds[i], 0);
+        }
+        return pageLengths;
+    }
+
+    public SiteStatistics readSiteStatistics(int siteId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), COALESCE(AVG(token_count), 0) FROM page "
+                        + "WHERE site_id = ? AND code = 200 AND token_count > 0",
+                (resultSet, rowNum) -> new SiteStatistics(resultSet.getInt(1), resultSet.getDouble(2)),
+                siteId);
+    }
+
+    /**
+     * Reads stored positions of given lemmas on given pages
+     *
+     * @return positions of each lemma found on the page, by page id
+     */
+    public Map<Integer, List<int[]>> readPositions(Collection<Integer> pageIds, Collection<Integer> lemmaIds) {
+        Map<Integer, List<int[]>> positions = new HashMap<>();
+        if (pageIds.isEmpty() || lemmaIds.isEmpty()) {
+            return positions;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT page_id, positions FROM `index` WHERE page_id IN (");
+        List<Object> args = new ArrayList<>(pageIds);
+        appendPlaceholders(sql, pageIds.size());
+        sql.append(") AND lemma_id IN (");
+        appendPlaceholders(sql, lemmaIds.size());
+        sql.append(")");
+        args.addAll(lemmaIds);
+
+        jdbcTemplate.query(sql.toString(),
+                resultSet -> {
+                    byte[] data = resultSet.getBytes(2);
+                    if (data != null) {
+                        positions.computeIfAbsent(resultSet.getInt(1), pageId -> new ArrayList<>())
+                                .add(LemmaOccurrences.decodePositions(data));
+                    }
+                },
+                args.toArray());
+        return positions;
+    }
+
+    /**
+     * Reads ordinal positions of words of the lemmas in page texts, pages indexed without them are skipped
+     *
+     * @return positions by lemma id by page id
+     */
+    public Map<Integer, Map<Integer, int[]>> readTokenPositions(Collection<Integer> pageIds,
+                                                                Collection<Integer> lemmaIds) {
+        Map<Integer, Map<Integer, int[]>> positions = new HashMap<>();
+        if (pageIds.isEmpty() || lemmaIds.isEmpty()) {
+            return positions;
+        }
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT page_id, lemma_id, token_positions FROM `index` WHERE page_id IN (");
+        List<Object> args = new ArrayList<>(pageIds);
+        appendPlaceholders(sql, pageIds.size());
+        sql.append(") AND lemma_id IN (");
+        appendPlaceholders(sql, lemmaIds.size());
+        sql.append(") AND token_positions IS NOT NULL");
+        args.addAll(lemmaIds);
+
+        jdbcTemplate.query(sql.toString(),
+                resultSet -> {
+                    positions.computeIfAbsent(resultSet.getInt(1), pageId -> new HashMap<>())
+                            .put(resultSet.getInt(2), LemmaOccurrences.decodePositions(resultSet.getBytes(3)));
+                },
+                args.toArray());
+        return positions;
+    }
+
+    private static void appendPlaceholders(StringBuilder sql, int count) {
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+    }
+}
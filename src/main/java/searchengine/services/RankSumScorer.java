@@ -0,0 +1,26 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Sum of lemma ranks on the page, the original ranking
+ */
+@Component
+public class RankSumScorer implements Scorer {
+    public static final String NAME = "rank";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void score(float[][] ranks, int[] documentFrequencies, int[] pageLengths, int size,
+                      SiteStatistics statistics, double[] scores) {
+        for (float[] lemmaRanks : ranks) {
+            for (int i = 0; i < size; i++) {
+                scores[i] += lemmaRanks[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Best pages of a query from best to worst with their absolute relevance,
+ * total number of matched pages and sites the query was evaluated on
+ */
+@Getter
+public class RankedPages {
+    private final int[] pageIds;
+    private final double[] scores;
+    private final int total;
+    private final double maxRelevance;
+    private final Set<Integer> siteIds;
+
+    public RankedPages(TopPages topPages, int total, double maxRelevance, Set<Integer> siteIds) {
+        this.pageIds = new int[topPages.size()];
+        this.scores = new double[topPages.size()];
+        for (int i = 0; i < topPages.size(); i++) {
+            pageIds[i] = topPages.getPageId(i);
+            scores[i] = topPages.getScore(i);
+        }
+        this.total = total;
+        this.maxRelevance = maxRelevance;
+        this.siteIds = siteIds;
+    }
+
+    public RankedPages(int[] pageIds, double[] scores, int total, double maxRelevance, Set<Integer> siteIds) {
+        this.pageIds = pageIds;
+        this.scores = scores;
+        this.total = total;
+        this.maxRelevance = maxRelevance;
+        this.siteIds = siteIds;
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * Pages up to the end of the window are ranked, or there are no more matched pages
+     */
+    public boolean covers(int windowEnd) {
+        return windowEnd <= pageIds.length || pageIds.length == total;
+    }
+}
@@ -0,0 +1,161 @@
+package searchengine.services;
+
+import java.net.URI;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Rules of robots.txt for our user agent: Allow and Disallow paths, Crawl-delay and Sitemap urls.
+ * The longest matching path decides, Allow wins over Disallow of the same length
+ */
+public class RobotsRules {
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(Collections.emptyList(), -1, Collections.emptyList());
+
+    // Sorted from the longest path, so the first matching rule decides
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMillis, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Takes the group of the most specific user agent token found in our user agent, or the group of *
+     */
+    public static RobotsRules parse(String robotsTxt, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<String> sitemaps = new ArrayList<>();
+        Map<String, List<String[]>> groups = new HashMap<>();
+        List<String> groupAgents = new ArrayList<>();
+        boolean readingAgents = false;
+
+        for (String line : robotsTxt.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("sitemap")) {
+                sitemaps.add(value);
+            } else if (field.equals("user-agent")) {
+                if (!readingAgents) {
+                    groupAgents = new ArrayList<>();
+                    readingAgents = true;
+                }
+                String groupAgent = value.toLowerCase(Locale.ROOT);
+                groupAgents.add(groupAgent);
+                groups.computeIfAbsent(groupAgent, key -> new ArrayList<>());
+            } else if (field.equals("allow") || field.equals("disallow") || field.equals("crawl-delay")) {
+                readingAgents = false;
+                for (String groupAgent : groupAgents) {
+                    groups.get(groupAgent).add(new String[]{field, value});
+                }
+            }
+        }
+
+        String matchedAgent = null;
+        for (String groupAgent : groups.keySet()) {
+            if (!groupAgent.equals("*") && agent.contains(groupAgent)
+                    && (matchedAgent == null || groupAgent.length() > matchedAgent.length())) {
+                matchedAgent = groupAgent;
+            }
+        }
+        List<String[]> lines = groups.getOrDefault(matchedAgent == null ? "*" : matchedAgent, Collections.emptyList());
+
+        List<Rule> rules = new ArrayList<>();
+        long crawlDelayMillis = -1;
+        for (String[] fieldValue : lines) {
+            if (fieldValue[0].equals("crawl-delay")) {
+                try {
+                    crawlDelayMillis = (long) (Double.parseDouble(fieldValue[1]) * 1000);
+                } catch (NumberFormatException ignored) {
+                    // Invalid delay is skipped
+                }
+            } else if (!fieldValue[1].isEmpty()) {
+                // Empty Disallow allows everything
+                rules.add(new Rule(fieldValue[1], fieldValue[0].equals("allow")));
+            }
+        }
+        rules.sort(Comparator.comparingInt((Rule rule) -> rule.path.length()).reversed()
+                .thenComparing(rule -> !rule.allow));
+        return new RobotsRules(rules, crawlDelayMillis, sitemaps);
+    }
+
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+
+        String path;
+        try {
+            URI uri = URI.create(url);
+            path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path += "?" + uri.getRawQuery();
+            }
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+
+        for (Rule rule : rules) {
+            if (rule.matches(path)) {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return delay between requests asked by the site, -1 if not set
+     */
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static class Rule {
+        private final String path;
+        private final boolean allow;
+        // Null for plain path prefix, the most common rule
+        private final Pattern pattern;
+
+        private Rule(String path, boolean allow) {
+            this.path = path;
+            this.allow = allow;
+            this.pattern = path.indexOf('*') >= 0 || path.endsWith("$") ? compile(path) : null;
+        }
+
+        private boolean matches(String urlPath) {
+            return pattern == null ? urlPath.startsWith(path) : pattern.matcher(urlPath).lookingAt();
+        }
+
+        private static Pattern compile(String path) {
+            boolean anchored = path.endsWith("$");
+            String body = anchored ? path.substring(0, path.length() - 1) : path;
+            StringBuilder regex = new StringBuilder();
+            String[] parts = body.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
+            }
+            if (anchored) {
+                regex.append('$');
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Brings tables created by older versions to the schema batch writes rely on. Schema update of Hibernate
+ * neither changes existing columns nor adds a unique key over duplicate rows, so this is done here:
+ * lemma and index ids get AUTO_INCREMENT, lemma gets binary collation, duplicate lemmas of a site
+ * are merged and the (site_id, lemma) unique key is added. Runs before anything else reads the index
+ */
+@Component
+public class SchemaMigration {
+    private static final Logger LOGGER = LogManager.getLogger(SchemaMigration.class);
+    private static final String UNIQUE_LEMMA_KEY = "site_lemma_index";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SchemaMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void migrate() {
+        // Session settings and temporary table need one connection
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                migrateIds(statement);
+                migrateLemmas(statement);
+            }
+            return null;
+        });
+    }
+
+    private void migrateIds(Statement statement) throws SQLException {
+        for (String table : new String[]{"lemma", "index"}) {
+            if (count(statement, "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() "
+                    + "AND table_name = '" + table + "' AND column_name = 'id' AND extra NOT LIKE '%auto_increment%'") == 0) {
+                continue;
+            }
+            // Lemma id is referenced by index rows, MySQL refuses to change it with foreign key checks on
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try {
+                statement.execute("ALTER TABLE `" + table + "` MODIFY id INT NOT NULL AUTO_INCREMENT");
+            } finally {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+            LOGGER.info("Table " + table + ": id made AUTO_INCREMENT");
+        }
+    }
+
+    private void migrateLemmas(Statement statement) throws SQLException {
+        if (count(statement, "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() "
+                + "AND table_name = 'lemma' AND index_name = '" + UNIQUE_LEMMA_KEY + "'") > 0) {
+            return;
+        }
+
+        statement.execute("ALTER TABLE lemma MODIFY lemma VARCHAR(255) COLLATE utf8mb4_bin NOT NULL");
+        statement.execute("DROP TEMPORARY TABLE IF EXISTS lemma_duplicate");
+        statement.execute("CREATE TEMPORARY TABLE lemma_duplicate AS "
+                + "SELECT l.id AS id, k.keep_id AS keep_id, l.site_id AS site_id FROM lemma l "
+                + "JOIN (SELECT site_id, lemma, MIN(id) AS keep_id FROM lemma GROUP BY site_id, lemma "
+                + "HAVING COUNT(*) > 1) k ON k.site_id = l.site_id AND k.lemma = l.lemma WHERE l.id <> k.keep_id");
+        int duplicates = count(statement, "SELECT COUNT(*) FROM lemma_duplicate");
+        if (duplicates > 0) {
+            statement.executeUpdate("UPDATE `index` i JOIN lemma_duplicate d ON i.lemma_id = d.id "
+                    + "SET i.lemma_id = d.keep_id");
+            // Page may have had rows of two copies of a lemma, one row is kept
+            statement.executeUpdate("DELETE i FROM `index` i JOIN `index` other ON other.page_id = i.page_id "
+                    + "AND other.lemma_id = i.lemma_id AND other.id < i.id "
+                    + "WHERE i.lemma_id IN (SELECT keep_id FROM lemma_duplicate)");
+            statement.executeUpdate("DELETE l FROM lemma l JOIN lemma_duplicate d ON l.id = d.id");
+            statement.executeUpdate("UPDATE lemma SET frequency = "
+                    + "(SELECT COUNT(*) FROM `index` WHERE `index`.lemma_id = lemma.id) "
+                    + "WHERE id IN (SELECT keep_id FROM lemma_duplicate)");
+        }
+        statement.execute("DROP TEMPORARY TABLE lemma_duplicate");
+        statement.execute("ALTER TABLE lemma ADD CONSTRAINT " + UNIQUE_LEMMA_KEY + " UNIQUE (site_id, lemma)");
+        LOGGER.info("Table lemma: " + duplicates + " duplicate lemmas merged, unique key added");
+    }
+
+    private static int count(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package searchengine.services;
+
+/**
+ * Ranking of pages matched by all query lemmas, selected for a search request by name
+ */
+public interface Scorer {
+    String getName();
+
+    /**
+     * Scorer needs page lengths and site statistics, otherwise they are not read
+     */
+    default boolean usesPageStatistics() {
+        return false;
+    }
+
+    /**
+     * Scores matched pages of one site
+     *
+     * @param ranks               rank of each query lemma on each matched page, ranks[lemma][page]
+     * @param documentFrequencies number of site pages with each query lemma
+     * @param pageLengths         length of each matched page, null if not used by the scorer
+     * @param size                number of matched pages
+     * @param statistics          page count and average page length of the site, null if not used by the scorer
+     * @param scores              score of each matched page, filled by the scorer
+     */
+    void score(float[][] ranks, int[] documentFrequencies, int[] pageLengths, int size,
+               SiteStatistics statistics, double[] scores);
+}
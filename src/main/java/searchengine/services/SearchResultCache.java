@@ -0,0 +1,106 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.Lemma;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ranked pages of recent queries, so other word forms of the same lemmas and next result pages
+ * are not evaluated again. Least recently used queries are evicted,
+ * queries evaluated on a site are dropped when the site index changes
+ */
+@Component
+public class SearchResultCache {
+    private final int maxSize;
+    private final Map<String, RankedPages> rankedPages;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public SearchResultCache(SearchSettings settings) {
+        this.maxSize = settings.getResultCache().getSize();
+        this.rankedPages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RankedPages> eldest) {
+                return size() > SearchResultCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Key of query lemmas chosen for each site, quoted phrases, ranking and site filter
+     */
+    public static String key(String ranking, String site, Map<Integer, List<Lemma>> lemmasBySite,
+                             List<List<String>> phrases) {
+        List<Integer> lemmaIds = new ArrayList<>();
+        lemmasBySite.values().forEach(siteLemmas -> siteLemmas.forEach(lemma -> lemmaIds.add(lemma.getId())));
+        Collections.sort(lemmaIds);
+        return ranking + '|' + (site == null ? "" : site) + '|' + lemmaIds + '|' + phrases;
+    }
+
+    /**
+     * @return ranked pages covering the window, null if the query is not cached or ranked less pages
+     */
+    public RankedPages get(String key, int windowEnd) {
+        RankedPages cached;
+        synchronized (rankedPages) {
+            cached = rankedPages.get(key);
+        }
+
+        if (cached == null || !cached.covers(windowEnd)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached;
+    }
+
+    public void put(String key, RankedPages ranked) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (rankedPages) {
+            rankedPages.put(key, ranked);
+        }
+    }
+
+    public void invalidateSite(int siteId) {
+        synchronized (rankedPages) {
+            rankedPages.values().removeIf(ranked -> ranked.getSiteIds().contains(siteId));
+        }
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        synchronized (rankedPages) {
+            return rankedPages.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Search result cache: size %d, hits %d, misses %d, invalidations %d, hit rate %.3f",
+                size(), getHits(), getMisses(), getInvalidations(), getHitRate());
+    }
+}
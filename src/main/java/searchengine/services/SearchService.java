@@ -3,5 +3,8 @@ package searchengine.services;
 import searchengine.model.RequestAnswer;
 
 public interface SearchService {
-    RequestAnswer search(String query, int offset, int limit, String site);
+    /**
+     * @param ranking name of {@link Scorer}, empty for default one
+     */
+    RequestAnswer search(String query, int offset, int limit, String site, String ranking);
 }
@@ -2,35 +2,71 @@ package searchengine.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import searchengine.dto.IndexRepository;
+import searchengine.config.SearchSettings;
 import searchengine.dto.LemmaRepository;
+import searchengine.dto.PageRepository;
 import searchengine.model.*;
 
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class SearchServiceImpl implements SearchService {
 
     public static final int HIGH_FREQUENCY = 100;
     public static final int WORDS_AROUND = 5;
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"");
 
     @Autowired
     private final TextProcessor textProcessor;
     @Autowired
     private final LemmaRepository lemmaRepository;
     @Autowired
-    private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    @Autowired
+    private final PostingListReader postingListReader;
+    @Autowired
+    private final InvertedIndex invertedIndex;
+    @Autowired
+    private final SearchSettings searchSettings;
+    @Autowired
+    private final SearchResultCache searchResultCache;
+    @Autowired
+    private final SnippetBuilder snippetBuilder;
+    @Autowired
+    private final PositionalRanker positionalRanker;
+    private final Map<String, Scorer> scorers = new HashMap<>();
 
     public SearchServiceImpl(TextProcessor textProcessor,
                              LemmaRepository lemmaRepository,
-                             IndexRepository indexRepository) {
+                             PageRepository pageRepository,
+                             PostingListReader postingListReader,
+                             InvertedIndex invertedIndex,
+                             SearchSettings searchSettings,
+                             SearchResultCache searchResultCache,
+                             SnippetBuilder snippetBuilder,
+                             PositionalRanker positionalRanker,
+                             List<Scorer> scorers) {
         this.textProcessor = textProcessor;
         this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
+        this.pageRepository = pageRepository;
+        this.postingListReader = postingListReader;
+        this.invertedIndex = invertedIndex;
+        this.searchSettings = searchSettings;
+        this.searchResultCache = searchResultCache;
+        this.snippetBuilder = snippetBuilder;
+        this.positionalRanker = positionalRanker;
+        scorers.forEach(scorer -> this.scorers.put(scorer.getName(), scorer));
     }
 
     @Override
-    public RequestAnswer search(String query, int offset, int limit, String site) {
+    public RequestAnswer search(String query, int offset, int limit, String site, String ranking) {
+        Scorer scorer = scorers.get(ranking == null || ranking.isEmpty() ? searchSettings.getRanking() : ranking);
+        if (scorer == null) {
+            return new RequestAnswer(false, "Unknown ranking: " + ranking);
+        }
+
         List<String> queryWords = splitQueryForLemmas(query);
 
         // ---------Checks if query is empty or no such lemmas was found in DB---------
@@ -38,17 +74,25 @@ public class SearchServiceImpl implements SearchService {
             return new RequestAnswer(false, "No results found");
         }
 
-        List<Lemma> queryLemmas = new ArrayList<>();
+        Set<String> lemmaWords = new LinkedHashSet<>();
         for (String queryWord : queryWords) {
             String lemma = textProcessor.getLemma(queryWord);
-            queryLemmas.addAll(lemmaRepository.findByLemma(lemma));
-            if (queryLemmas.isEmpty()) {
-                return new RequestAnswer(false, "No results found");
+            if (!lemma.isEmpty()) {
+                lemmaWords.add(lemma);
             }
         }
+
+        if (lemmaWords.isEmpty()) {
+            return new RequestAnswer(false, "No results found");
+        }
+
+        List<List<String>> phrases = findPhrases(query);
+        List<Lemma> queryLemmas = lemmaRepository.findByLemmaIn(lemmaWords);
         // -----------------------------------------------------------------------------
 
         //----------Filter lemmas by site----------
+        // Generations being built or deleted are not searched
+        queryLemmas.removeIf(lemma -> lemma.getSiteId().getGeneration() != Generation.SERVING);
         if (site != null &&  !site.isEmpty()) {
             queryLemmas.removeIf(lemma -> !lemma.getSiteId().getUrl().contains(site));
         }
@@ -58,140 +102,207 @@ public class SearchServiceImpl implements SearchService {
         }
         // -----------------------------------------
 
-
-        //----------Removes high frequency lemmas and sorts from rare to common---------
-
-        Iterator<Lemma> iterator = queryLemmas.iterator();
-        while (iterator.hasNext()) {
-            Lemma lemma = iterator.next();
-            if (lemma.getFrequency() > HIGH_FREQUENCY && queryLemmas.size() > 1) {
-                iterator.remove();
-            }
+        //----------Groups lemmas by site, site must contain every query lemma----------
+        Map<Integer, List<Lemma>> lemmasBySite = new HashMap<>();
+        for (Lemma lemma : queryLemmas) {
+            lemmasBySite.computeIfAbsent(lemma.getSiteId().getId(), siteId -> new ArrayList<>()).add(lemma);
         }
-
-        queryLemmas.sort(Comparator.comparing(Lemma::getFrequency).reversed());
-        // ----------------------------------------------------------------------------
-
-        Set<Page> pages = new HashSet<>();
-        indexRepository.findByLemmaId(queryLemmas.get(0).getId()).forEach(index -> pages.add(index.getPageId()));
-
-        //---------Removes pages that don't contain all query lemmas---------
-        for (int i = 1; i < queryLemmas.size(); i++) {
-            Iterator<Page> pageIterator = pages.iterator();
-            while (pageIterator.hasNext()) {
-                Page page = pageIterator.next();
-                if (indexRepository.findByLemmaIdAndPageId(queryLemmas.get(i).getId(), page.getId()).isEmpty()) {
-                    pageIterator.remove();
+        lemmasBySite.values().removeIf(siteLemmas -> siteLemmas.size() < lemmaWords.size());
+        // ------------------------------------------------------------------------------
+
+        //----------Removes high frequency lemmas of each site----------
+        for (List<Lemma> siteLemmas : lemmasBySite.values()) {
+            Iterator<Lemma> iterator = siteLemmas.iterator();
+            while (iterator.hasNext()) {
+                Lemma lemma = iterator.next();
+                if (lemma.getFrequency() > HIGH_FREQUENCY && siteLemmas.size() > 1) {
+                    iterator.remove();
                 }
             }
         }
-        // -----------------------------------------------------------------
+        // ---------------------------------------------------------------
 
-        if (pages.isEmpty()) {
+        if (lemmasBySite.isEmpty()) {
             return new RequestAnswer(false, "No results found");
         }
 
-
-        //---------Calculates absolute relevance of each page---------
-        HashMap<Page, Double[]> pagesRelevance = new HashMap<>();
-        double maxAbsoluteRelevance = 0.0;
-
-        for (Page page : pages) {
-            Double[] relevanceValues = new Double[queryLemmas.size() + 2];
-            relevanceValues[0] = 0.0;
-            double absoluteRelevance = 0.0;
-            for (int i = 0; i < queryLemmas.size(); i++) {
-                List<Index> indexes = indexRepository.findByLemmaIdAndPageId(queryLemmas.get(i).getId(), page.getId());
-                relevanceValues[i] = (double) indexes.get(0).getRank();
-                absoluteRelevance += relevanceValues[i];
+        //---------Takes ranked pages of the same lemmas from cache or ranks them---------
+        int from = Math.max(0, offset);
+        int windowEnd = (int) Math.min((long) from + Math.max(0, limit), Integer.MAX_VALUE);
+        String cacheKey = SearchResultCache.key(scorer.getName(), site, lemmasBySite, phrases);
+        RankedPages rankedPages = searchResultCache.get(cacheKey, windowEnd);
+        if (rankedPages == null) {
+            rankedPages = rankPages(scorer, lemmasBySite,
+                    Math.max(windowEnd, searchSettings.getResultCache().getDepth()));
+            if (searchSettings.getPositional().isEnabled() && (!phrases.isEmpty() || lemmaWords.size() > 1)) {
+                rankedPages = rerankByPositions(rankedPages, queryLemmas, phrases);
             }
+            searchResultCache.put(cacheKey, rankedPages);
+        }
+        // ---------------------------------------------------------------------------------
 
-            relevanceValues[queryLemmas.size()] = absoluteRelevance;
-            pagesRelevance.put(page, relevanceValues);
-
-            if (absoluteRelevance > maxAbsoluteRelevance) {
-                maxAbsoluteRelevance = absoluteRelevance;
-            }
+        if (rankedPages.getTotal() == 0) {
+            return new RequestAnswer(false, "No results found");
         }
-        //----------------------------------------------------
 
+        //---------Loads pages of the requested window---------
+        int to = Math.min(windowEnd, rankedPages.size());
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            pageIds.add(rankedPages.getPageIds()[i]);
+        }
 
-        //---------Calculates relative relevance of each page---------
-        for (Map.Entry<Page, Double[]> entry : pagesRelevance.entrySet()) {
-            Double[] relevanceValues = entry.getValue();
-            relevanceValues[queryLemmas.size() + 1] = relevanceValues[queryLemmas.size()] / maxAbsoluteRelevance;
+        Map<Integer, Page> pages = new HashMap<>();
+        if (!pageIds.isEmpty()) {
+            pageRepository.findByIdIn(pageIds).forEach(page -> pages.put(page.getId(), page));
+        }
+        //-----------------------------------------------------
+
+        //---------Creates Search result for each page, snippets are built in parallel---------
+        List<Page> windowPages = new ArrayList<>();
+        List<Double> windowRelevance = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Page page = pages.get(rankedPages.getPageIds()[i]);
+            if (page != null) {
+                windowPages.add(page);
+                windowRelevance.add(rankedPages.getScores()[i] / rankedPages.getMaxRelevance());
+            }
         }
-        //------------------------------------------------------------
 
-        //---------Sorts pages by relative relevance---------
-        List<Page> sortedPages = new ArrayList<>(pagesRelevance.keySet());
-        sortedPages.sort(new PageByRelativeRelevanceComparator(pagesRelevance));
-        //----------------------------------------------------
+        List<Integer> queryLemmaIds = new ArrayList<>();
+        queryLemmas.forEach(lemma -> queryLemmaIds.add(lemma.getId()));
+        List<String> snippets = snippetBuilder.build(windowPages,
+                postingListReader.readPositions(pages.keySet(), queryLemmaIds), query, WORDS_AROUND);
 
-        //---------Creates Search result for each page---------
         ArrayList<SearchResult> searchResults = new ArrayList<>();
-        limit = Math.min(limit, sortedPages.size());
-        for(int i = offset; i < limit; i++) {
-            Page page = sortedPages.get(i);
+        for (int i = 0; i < windowPages.size(); i++) {
+            Page page = windowPages.get(i);
             SearchResult searchResult = new SearchResult(page.getSiteId().getUrl(),
                     page.getSiteId().getName(),
                     page.getPath(),
-                    getTitle(page),
-                    textProcessor.createSnippet(page.getContent(), query, WORDS_AROUND),
-                    pagesRelevance.get(page)[queryLemmas.size() + 1]);
+                    page.getTitle(),
+                    snippets.get(i),
+                    windowRelevance.get(i));
             searchResults.add(searchResult);
         }
-        //----------------------------------------------------
+        //--------------------------------------------------------------------------------------
 
 
-        return new SearchRequestAnswer(pages.size(), searchResults);
+        return new SearchRequestAnswer(rankedPages.getTotal(), searchResults);
     }
 
-    private List<String> splitQueryForLemmas(String query) {
-        query = query.toLowerCase();
-        query = textProcessor.removePunctuation(query);
-        String[] split = query.split(" ");
-        List<String> queryWords = new ArrayList<>(Arrays.asList(split));
-        queryWords.removeIf(String::isEmpty);
-        queryWords.forEach(textProcessor::getLemma);
-
-        return queryWords;
+    /**
+     * Intersects posting lists of each site, scores matched pages as absolute relevance
+     * and keeps given number of best ones
+     */
+    private RankedPages rankPages(Scorer scorer, Map<Integer, List<Lemma>> lemmasBySite, int depth) {
+        Map<Integer, PostingList> postingLists = readPostingLists(lemmasBySite);
+
+        List<PageMatches> siteMatches = new ArrayList<>();
+        lemmasBySite.forEach((siteId, siteLemmas) -> {
+            List<PostingList> sitePostingLists = new ArrayList<>();
+            siteLemmas.forEach(lemma -> sitePostingLists.add(postingLists.get(lemma.getId())));
+            PageMatches sitePageMatches = PageMatches.intersect(sitePostingLists);
+            if (sitePageMatches.getSize() > 0) {
+                scorePages(scorer, siteId, sitePostingLists, sitePageMatches);
+                siteMatches.add(sitePageMatches);
+            }
+        });
+        PageMatches matches = PageMatches.concat(siteMatches);
+
+        TopPages topPages = new TopPages(Math.min(depth, matches.getSize()));
+        topPages.offerAll(matches);
+        topPages.sortDescending();
+        return new RankedPages(topPages, matches.getSize(), matches.maxRelevance(),
+                new HashSet<>(lemmasBySite.keySet()));
     }
 
-    private String getTitle(Page page) {
-        String pageContent = page.getContent();
-        int titleTextStartIndex = pageContent.indexOf("<title>");
-        int titleTextEndIndex = pageContent.indexOf("</title>");
-
-        if (titleTextStartIndex == -1 || titleTextEndIndex == -1) {
-            return "";
+    /**
+     * Checks phrases and proximity of query words on best pages of the sites they were ranked on
+     */
+    private RankedPages rerankByPositions(RankedPages rankedPages, List<Lemma> queryLemmas,
+                                          List<List<String>> phrases) {
+        Map<Integer, String> lemmasById = new HashMap<>();
+        for (Lemma lemma : queryLemmas) {
+            if (rankedPages.getSiteIds().contains(lemma.getSiteId().getId())) {
+                lemmasById.put(lemma.getId(), lemma.getLemma());
+            }
         }
+        return positionalRanker.rerank(rankedPages, lemmasById, phrases);
+    }
 
-        titleTextStartIndex += 7;
+    private void scorePages(Scorer scorer, int siteId, List<PostingList> postingLists, PageMatches matches) {
+        int[] documentFrequencies = new int[postingLists.size()];
+        for (int i = 0; i < documentFrequencies.length; i++) {
+            documentFrequencies[i] = postingLists.get(i).size();
+        }
 
-        return pageContent.substring(titleTextStartIndex, titleTextEndIndex);
+        int[] pageLengths = null;
+        SiteStatistics statistics = null;
+        if (scorer.usesPageStatistics()) {
+            if (invertedIndex.isReady()) {
+                pageLengths = invertedIndex.getPageLengths(siteId, matches.getPageIds(), matches.getSize());
+                statistics = invertedIndex.getSiteStatistics(siteId);
+            } else {
+                pageLengths = postingListReader.readPageLengths(matches.getPageIds(), matches.getSize());
+                statistics = postingListReader.readSiteStatistics(siteId);
+            }
+        }
+        matches.score(scorer, documentFrequencies, pageLengths, statistics);
     }
 
     /**
-     * Class is needed to represent complex logic of comparing pages by its pre-calculated relevance
+     * Takes posting lists from in-memory index, or from DB until the index is loaded
      */
-    static class PageByRelativeRelevanceComparator implements Comparator<Page> {
-        Map<Page, Double[]> base;
+    private Map<Integer, PostingList> readPostingLists(Map<Integer, List<Lemma>> lemmasBySite) {
+        boolean indexReady = invertedIndex.isReady();
+        Map<Integer, PostingList> postingLists = new HashMap<>();
+        Set<Integer> lemmaIds = new HashSet<>();
+        lemmasBySite.forEach((siteId, siteLemmas) -> {
+            List<Integer> siteLemmaIds = new ArrayList<>();
+            siteLemmas.forEach(lemma -> siteLemmaIds.add(lemma.getId()));
+            if (indexReady) {
+                postingLists.putAll(invertedIndex.read(siteId, siteLemmaIds));
+            } else {
+                lemmaIds.addAll(siteLemmaIds);
+            }
+        });
 
-        public PageByRelativeRelevanceComparator(Map<Page, Double[]> base) {
-            this.base = base;
+        if (!indexReady) {
+            postingLists.putAll(postingListReader.read(lemmaIds));
         }
+        return postingLists;
+    }
 
-        public int compare(Page a, Page b) {
-            Double[] aRelevanceValues = base.get(a);
-            Double[] bRelevanceValues = base.get(b);
-
-            // In each array of relevance values last value is relative relevance
-            Double aRelativeRelevance = aRelevanceValues[aRelevanceValues.length - 1];
-            Double bRelativeRelevance = bRelevanceValues[bRelevanceValues.length - 1];
+    /**
+     * Lemmas of quoted phrases of the query, phrases of less than two words that are not stop words are ignored
+     */
+    private List<List<String>> findPhrases(String query) {
+        List<List<String>> phrases = new ArrayList<>();
+        Matcher matcher = PHRASE.matcher(query);
+        while (matcher.find()) {
+            List<String> phrase = textProcessor.getPhraseLemmas(matcher.group(1));
+            while (!phrase.isEmpty() && phrase.get(phrase.size() - 1).isEmpty()) {
+                phrase.remove(phrase.size() - 1);
+            }
+            while (!phrase.isEmpty() && phrase.get(0).isEmpty()) {
+                phrase.remove(0);
+            }
+            if (phrase.stream().filter(lemma -> !lemma.isEmpty()).count() > 1) {
+                phrases.add(phrase);
+            }
+        }
+        return phrases;
+    }
 
+    private List<String> splitQueryForLemmas(String query) {
+        query = query.toLowerCase();
+        query = textProcessor.removePunctuation(query);
+        String[] split = query.split(" ");
+        List<String> queryWords = new ArrayList<>(Arrays.asList(split));
+        queryWords.removeIf(String::isEmpty);
+        queryWords.forEach(textProcessor::getLemma);
 
-            return bRelativeRelevance.compareTo(aRelativeRelevance);
-        }
+        return queryWords;
     }
 }
@@ -0,0 +1,429 @@
+package searchengine.services;
+
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import searchengine.dto.PageState;
+import searchengine.model.Site;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * State of one site crawl: pages waiting for parsing and pages being parsed.
+ * Pages are loaded on shared fetch threads within host politeness limits and parsed on shared crawl workers,
+ * but no more than given number of pages at once for this site.
+ * Waiting pages are taken by their {@link CrawlPriority} value, not in order of discovery
+ */
+public class SiteCrawl {
+    private static final Logger LOGGER = LogManager.getLogger(SiteCrawl.class);
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 600_000;
+
+    @Getter
+    private final Site site;
+    @Getter
+    private final VisitedUrls visitedUrls;
+    @Getter
+    private final LemmaDictionary lemmaDictionary;
+    @Getter
+    private final HostRateLimiter hostRateLimiter;
+    @Getter
+    private final CrawlFrontier frontier;
+    @Getter
+    private final NearDuplicates nearDuplicates;
+    private final Executor processExecutor;
+    private final int maxParallelPages;
+    private final CrawlPriority priority;
+    // Url whose value grew is queued again, its old copy stays in the queue and is skipped
+    private final PriorityQueue<QueuedUrl> pendingUrls = new PriorityQueue<>();
+    private final Map<String, QueuedUrl> queuedUrls = new HashMap<>();
+    private long queuedCount;
+    private int dispatchedPages;
+    private volatile RobotsRules robotsRules = RobotsRules.ALLOW_ALL;
+    private Map<String, Instant> sitemapPages = Collections.emptyMap();
+    private Instant previousCrawl;
+    @Getter
+    private final CompletableFuture<SiteCrawl> completion = new CompletableFuture<>();
+
+    // Pages stored by the previous crawl by path, empty unless the crawl is incremental
+    private Map<String, PageState> knownPages = Collections.emptyMap();
+    // Urls queued but not parsed before the stop of a resumed crawl, their links may be not followed yet
+    private Set<String> unfinishedUrls = Collections.emptySet();
+    private final AtomicInteger unchangedPages = new AtomicInteger();
+    private final AtomicInteger changedPages = new AtomicInteger();
+    private final AtomicInteger removedPages = new AtomicInteger();
+    private final AtomicInteger duplicatePages = new AtomicInteger();
+
+    private Function<FrontierEntry, PageExtractorAction> taskFactory;
+    private int runningPages;
+    private boolean stopped;
+    @Getter
+    private boolean resumed;
+    @Getter
+    private volatile String lastError;
+
+    public SiteCrawl(Site site, VisitedUrls visitedUrls, LemmaDictionary lemmaDictionary,
+                     HostRateLimiter hostRateLimiter, CrawlFrontier frontier, CrawlPriority priority,
+                     NearDuplicates nearDuplicates, Executor processExecutor, int maxParallelPages) {
+        this.site = site;
+        this.visitedUrls = visitedUrls;
+        this.lemmaDictionary = lemmaDictionary;
+        this.hostRateLimiter = hostRateLimiter;
+        this.frontier = frontier;
+        this.priority = priority;
+        this.nearDuplicates = nearDuplicates;
+        this.processExecutor = processExecutor;
+        this.maxParallelPages = Math.max(1, maxParallelPages);
+    }
+
+    /**
+     * Starts crawl from the root url
+     *
+     * @param rootUrl     first url to parse
+     * @param taskFactory creates task parsing given url
+     */
+    public void start(String rootUrl, Function<FrontierEntry, PageExtractorAction> taskFactory) {
+        this.taskFactory = taskFactory;
+        frontier.open(false);
+        visitedUrls.claim(rootUrl);
+        submit(rootUrl, 0);
+
+        for (Map.Entry<String, Instant> sitemapPage : sitemapPages.entrySet()) {
+            String url = sitemapPage.getKey();
+            if (!robotsRules.isAllowed(url) || !visitedUrls.claim(url)) {
+                continue;
+            }
+            Instant lastModified = sitemapPage.getValue();
+            if (knownPages.containsKey(getPath(url)) && lastModified != null && previousCrawl != null
+                    && lastModified.isBefore(previousCrawl)) {
+                // Sitemap tells the page did not change since the previous crawl, it is not loaded at all
+                pageUnchanged();
+                continue;
+            }
+            submit(url, 1);
+        }
+    }
+
+    /**
+     * Applies robots.txt of the site: disallowed links are not followed, crawl delay slows down the host
+     */
+    public void setRobotsRules(RobotsRules robotsRules) {
+        this.robotsRules = robotsRules;
+        if (robotsRules.getCrawlDelayMillis() > 0) {
+            hostRateLimiter.setMinDelay(robotsRules.getCrawlDelayMillis());
+        }
+    }
+
+    public boolean isAllowed(String url) {
+        return robotsRules.isAllowed(url);
+    }
+
+    /**
+     * Sets pages listed in sitemaps to be queued at start after the root page
+     *
+     * @param sitemapPages  page urls with their last modification time from sitemap
+     * @param previousCrawl start time of the previous finished crawl of the site, stored pages not modified
+     *                      since then are skipped, null to load all pages
+     */
+    public void setSitemapPages(Map<String, Instant> sitemapPages, Instant previousCrawl) {
+        this.sitemapPages = sitemapPages;
+        this.previousCrawl = previousCrawl;
+    }
+
+    /**
+     * Starts incremental crawl: pages of the previous crawl are loaded again with their stored validators,
+     * so unchanged pages are skipped even when no changed page links to them
+     *
+     * @param knownPages pages stored by the previous crawl by path
+     */
+    public void startIncremental(String rootUrl, Map<String, PageState> knownPages,
+                                 Function<FrontierEntry, PageExtractorAction> taskFactory) {
+        setKnownPages(knownPages);
+        start(rootUrl, taskFactory);
+        for (String path : knownPages.keySet()) {
+            String url = path.startsWith("http") ? path : site.getUrl() + path;
+            if (robotsRules.isAllowed(url) && visitedUrls.claim(url)) {
+                // Depth of a stored page is not known, it was within limits of the previous crawl
+                submit(url, 1);
+            }
+        }
+    }
+
+    /**
+     * Continues stopped crawl from urls queued but not parsed. Pages stored before the stop
+     * are taken as known, so pages parsed again after a crash update their stored copies
+     *
+     * @param state      frontier of the stopped crawl
+     * @param knownPages pages of the site stored by path
+     */
+    public void resume(CrawlFrontier.State state, Map<String, PageState> knownPages,
+                       Function<FrontierEntry, PageExtractorAction> taskFactory) {
+        this.taskFactory = taskFactory;
+        setKnownPages(knownPages);
+        Set<String> unfinished = new HashSet<>();
+        state.getPending().forEach(entry -> unfinished.add(entry.getUrl()));
+        this.unfinishedUrls = unfinished;
+        this.resumed = true;
+        frontier.open(true);
+        state.getSeenUrls().forEach(visitedUrls::claim);
+        synchronized (this) {
+            dispatchedPages = knownPages.size();
+            // Urls are in the log already
+            state.getPending().forEach(this::enqueue);
+            dispatch();
+            completeIfDone();
+        }
+    }
+
+    /**
+     * @return page stored by the previous crawl, null if the page is new or the crawl is not incremental
+     */
+    public PageState getKnownPage(String path) {
+        return knownPages.get(path);
+    }
+
+    /**
+     * Page stored before the stop of a resumed crawl must be loaded in full: its links are followed
+     * only after parsing, so answer "not modified" would lose pages linked from it
+     *
+     * @return true if the url was queued but not parsed when the resumed crawl stopped
+     */
+    public boolean isUnfinished(String url) {
+        return unfinishedUrls.contains(url);
+    }
+
+    /**
+     * Path of the site page as stored, the root page is stored by its full url
+     */
+    public String getPath(String url) {
+        String path = url.replace(site.getUrl(), "");
+        return path.isBlank() ? url : path;
+    }
+
+    public void pageUnchanged() {
+        unchangedPages.incrementAndGet();
+    }
+
+    public void pageChanged() {
+        changedPages.incrementAndGet();
+    }
+
+    public void pageRemoved() {
+        removedPages.incrementAndGet();
+    }
+
+    /**
+     * Counts new page not stored as a duplicate of another page
+     */
+    public void pageDuplicate() {
+        duplicatePages.incrementAndGet();
+    }
+
+    public int getDuplicatePages() {
+        return duplicatePages.get();
+    }
+
+    public boolean isIncremental() {
+        return !knownPages.isEmpty();
+    }
+
+    public String getIncrementalSummary() {
+        return site.getUrl() + ": " + knownPages.size() + " known pages, " + unchangedPages + " unchanged, "
+                + changedPages + " changed, " + removedPages + " removed";
+    }
+
+    /**
+     * Parses only given url in the calling thread, links of the page are not followed
+     */
+    public void runSinglePage(String url, Function<FrontierEntry, PageExtractorAction> taskFactory) {
+        synchronized (this) {
+            stopped = true;
+        }
+        visitedUrls.claim(url);
+        PageExtractorAction task = taskFactory.apply(new FrontierEntry(url, 0));
+        task.fetch();
+        task.run();
+    }
+
+    /**
+     * Queues url already claimed in visited urls
+     *
+     * @param depth number of links followed from the site root to the url
+     */
+    public synchronized void submit(String url, int depth) {
+        if (stopped || !priority.allowsDepth(depth)) {
+            return;
+        }
+        FrontierEntry entry = new FrontierEntry(url, depth);
+        frontier.queued(entry);
+        enqueue(entry);
+        dispatch();
+    }
+
+    /**
+     * Counts link of a parsed page to url claimed before, waiting url linked from more pages is taken earlier
+     */
+    public synchronized void linkFound(String url) {
+        String key = VisitedUrls.normalize(url);
+        QueuedUrl queued = queuedUrls.get(key);
+        if (queued == null) {
+            return;
+        }
+
+        int inboundLinks = queued.inboundLinks + 1;
+        if (CrawlPriority.inboundLevel(inboundLinks) == CrawlPriority.inboundLevel(queued.inboundLinks)) {
+            queued.inboundLinks = inboundLinks;
+            return;
+        }
+        FrontierEntry entry = queued.entry;
+        QueuedUrl requeued = new QueuedUrl(entry, key, inboundLinks,
+                priority.value(entry.getUrl(), entry.getDepth(), inboundLinks), queued.order);
+        queuedUrls.put(key, requeued);
+        pendingUrls.add(requeued);
+    }
+
+    /**
+     * Drops pages waiting for parsing. Crawl completes when running pages are finished
+     */
+    public synchronized void stop() {
+        stopped = true;
+        pendingUrls.clear();
+        queuedUrls.clear();
+        completeIfDone();
+    }
+
+    public void fail(String error) {
+        lastError = error;
+    }
+
+    /**
+     * Stored pages are compared with new ones for near duplicates too
+     */
+    private void setKnownPages(Map<String, PageState> knownPages) {
+        this.knownPages = knownPages;
+        for (PageState knownPage : knownPages.values()) {
+            if (knownPage.getSimHash() != null) {
+                nearDuplicates.add(knownPage.getSimHash());
+            }
+        }
+    }
+
+    private void enqueue(FrontierEntry entry) {
+        String key = VisitedUrls.normalize(entry.getUrl());
+        QueuedUrl queued = new QueuedUrl(entry, key, 1,
+                priority.value(entry.getUrl(), entry.getDepth(), 1), queuedCount++);
+        queuedUrls.put(key, queued);
+        pendingUrls.add(queued);
+    }
+
+    private void dispatch() {
+        while (runningPages < maxParallelPages && !queuedUrls.isEmpty()) {
+            QueuedUrl queued = pendingUrls.poll();
+            if (queuedUrls.get(queued.key) != queued) {
+                continue;
+            }
+            queuedUrls.remove(queued.key);
+
+            if (!priority.allowsPages(dispatchedPages)) {
+                LOGGER.info("Page limit reached on " + site.getUrl() + ", " + queuedUrls.size() + " urls skipped");
+                pendingUrls.clear();
+                queuedUrls.clear();
+                return;
+            }
+            dispatchedPages++;
+            PageExtractorAction task = taskFactory.apply(queued.entry);
+            runningPages++;
+            hostRateLimiter.submit(() -> fetchStage(task));
+        }
+    }
+
+    private void fetchStage(PageExtractorAction task) {
+        FetchedPage fetchedPage;
+        try {
+            fetchedPage = task.fetch();
+        } catch (RuntimeException exception) {
+            LOGGER.error("Page loading failed on " + site.getUrl(), exception);
+            taskFinished();
+            return;
+        } finally {
+            hostRateLimiter.release();
+        }
+
+        if (fetchedPage != null && fetchedPage.isThrottled() && task.getFetchAttempts() < MAX_FETCH_ATTEMPTS) {
+            long delay = fetchedPage.getRetryAfterMillis() >= 0 ? fetchedPage.getRetryAfterMillis()
+                    : RETRY_DELAY_MILLIS << task.getFetchAttempts();
+            hostRateLimiter.pause(Math.min(delay, MAX_RETRY_DELAY_MILLIS));
+            hostRateLimiter.submit(() -> fetchStage(task));
+            return;
+        }
+
+        try {
+            // Blocks while process queue is full, so fetching can't run far ahead of parsing
+            processExecutor.execute(() -> processStage(task));
+        } catch (RuntimeException exception) {
+            LOGGER.error("Page parsing was not started on " + site.getUrl(), exception);
+            taskFinished();
+        }
+    }
+
+    private void processStage(PageExtractorAction task) {
+        try {
+            task.run();
+            if (task.isProcessed()) {
+                frontier.done(task.getUrl());
+            }
+        } catch (RuntimeException exception) {
+            LOGGER.error("Page parsing failed on " + site.getUrl(), exception);
+        } finally {
+            taskFinished();
+        }
+    }
+
+    private synchronized void taskFinished() {
+        runningPages--;
+        dispatch();
+        completeIfDone();
+    }
+
+    private void completeIfDone() {
+        if (runningPages == 0 && queuedUrls.isEmpty()) {
+            completion.complete(this);
+        }
+    }
+
+    /**
+     * Waiting url with its value, equal values are taken in order of queueing
+     */
+    private static class QueuedUrl implements Comparable<QueuedUrl> {
+        private final FrontierEntry entry;
+        private final String key;
+        private final double value;
+        private final long order;
+        private int inboundLinks;
+
+        private QueuedUrl(FrontierEntry entry, String key, int inboundLinks, double value, long order) {
+            this.entry = entry;
+            this.key = key;
+            this.inboundLinks = inboundLinks;
+            this.value = value;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(QueuedUrl other) {
+            int byValue = Double.compare(other.value, value);
+            return byValue != 0 ? byValue : Long.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.SiteRepository;
+import searchengine.model.Generation;
+import searchengine.model.Site;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Switches search to a newly built generation of a site and deletes retired generations in background.
+ * Rows are deleted in small batches, so the collection never holds long locks on tables used by search
+ */
+@Component
+public class SiteGenerations {
+    private static final Logger LOGGER = LogManager.getLogger(SiteGenerations.class);
+    private static final int PAGE_BATCH_SIZE = 100;
+    private static final int LEMMA_BATCH_SIZE = 5000;
+
+    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+    private final CrawlerSettings crawlerSettings;
+    private final ExecutorService collector = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "site-generations-gc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SiteGenerations(SiteRepository siteRepository, JdbcTemplate jdbcTemplate,
+                           InvertedIndex invertedIndex, SearchResultCache searchResultCache,
+                           CrawlerSettings crawlerSettings) {
+        this.siteRepository = siteRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.invertedIndex = invertedIndex;
+        this.searchResultCache = searchResultCache;
+        this.crawlerSettings = crawlerSettings;
+    }
+
+    /**
+     * Collects generations retired before restart
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void collectRetired() {
+        dropPathOnlyUniqueIndexes();
+        siteRepository.findByGeneration(Generation.RETIRED).forEach(site -> collect(site.getId()));
+    }
+
+    /**
+     * Makes the site generation serving and retires other generations of the site in one transaction
+     *
+     * @return ids of retired generations
+     */
+    @Transactional
+    public List<Integer> swap(Site site) {
+        List<Integer> retired = new ArrayList<>();
+        for (Site other : siteRepository.findByUrl(site.getUrl())) {
+            if (other.getId() != site.getId()) {
+                retired.add(other.getId());
+            }
+        }
+        site.setGeneration(Generation.SERVING);
+        siteRepository.save(site);
+        siteRepository.retireOtherGenerations(site.getUrl(), site.getId());
+        return retired;
+    }
+
+    /**
+     * Retires the generation without making another one serving, e.g. when its build was stopped
+     */
+    public void retire(Site site) {
+        site.setGeneration(Generation.RETIRED);
+        siteRepository.save(site);
+        collect(site.getId());
+    }
+
+    /**
+     * Drops retired generation from search at once and deletes its rows in background
+     */
+    public void collect(int siteId) {
+        invertedIndex.removeSite(siteId);
+        searchResultCache.invalidateSite(siteId);
+        CrawlFrontier.of(crawlerSettings, siteId).delete();
+        collector.execute(() -> {
+            try {
+                deleteGeneration(siteId);
+            } catch (RuntimeException exception) {
+                LOGGER.error("Retired site generation " + siteId + " was not deleted", exception);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        collector.shutdownNow();
+    }
+
+    /**
+     * Schema update keeps unique keys of page path created before generations, they forbid two copies of a page
+     */
+    private void dropPathOnlyUniqueIndexes() {
+        List<String> indexes = jdbcTemplate.queryForList("SELECT index_name FROM information_schema.statistics "
+                + "WHERE table_schema = DATABASE() AND table_name = 'page' AND non_unique = 0 "
+                + "GROUP BY index_name HAVING COUNT(*) = 1 AND MAX(column_name) = 'path'", String.class);
+        for (String index : indexes) {
+            jdbcTemplate.execute("ALTER TABLE page DROP INDEX `" + index + "`");
+            LOGGER.info("Unique index " + index + " of page path dropped");
+        }
+    }
+
+    private void deleteGeneration(int siteId) {
+        int pages = 0;
+        List<Integer> pageIds;
+        while (!(pageIds = jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ? LIMIT ?",
+                Integer.class, siteId, PAGE_BATCH_SIZE)).isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            String placeholders = String.join(", ", Collections.nCopies(pageIds.size(), "?"));
+            Object[] args = pageIds.toArray();
+            jdbcTemplate.update("DELETE FROM `index` WHERE page_id IN (" + placeholders + ")", args);
+            jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + placeholders + ")", args);
+            jdbcTemplate.update("DELETE FROM page WHERE id IN (" + placeholders + ")", args);
+            pages += pageIds.size();
+        }
+
+        while (jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ? LIMIT ?", siteId, LEMMA_BATCH_SIZE) > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+        jdbcTemplate.update("DELETE FROM site WHERE id = ?", siteId);
+        LOGGER.info("Retired site generation " + siteId + " deleted with " + pages + " pages");
+    }
+}
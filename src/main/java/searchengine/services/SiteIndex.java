@@ -0,0 +1,403 @@
+package searchengine.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search index of one site: immutable segments on disk and posting lists of pages indexed after the last segment.
+ * Live posting lists are frozen while a new segment is written from them and dropped when it is installed
+ */
+public class SiteIndex {
+    private final int siteId;
+    private final AtomicInteger nextSequence = new AtomicInteger();
+    // Swapped under write lock, changed under read lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, CompressedPostingList> live = new ConcurrentHashMap<>();
+    private Map<Integer, Integer> livePageLengths = new ConcurrentHashMap<>();
+    private Map<Integer, CompressedPostingList> frozen = Collections.emptyMap();
+    private Map<Integer, Integer> frozenPageLengths = Collections.emptyMap();
+    private List<IndexSegment> segments = Collections.emptyList();
+    // Deleted page ids are appended to the buffer and sorted into the snapshot read by search when it changed
+    private final Object deletedPagesLock = new Object();
+    private int[] deletedPagesBuffer = new int[16];
+    private int deletedPagesCount;
+    private volatile int[] deletedPages = new int[0];
+    private volatile boolean deletedPagesChanged;
+    private volatile boolean unsavedDeletions;
+    // Pages with words ever added and their total length, deleted pages are subtracted when statistics are read
+    private final AtomicInteger indexedPages = new AtomicInteger();
+    private final AtomicLong indexedLength = new AtomicLong();
+    private final Object statisticsLock = new Object();
+    private int[] statisticsDeletedPages;
+    private int deletedIndexedPages;
+    private long deletedIndexedLength;
+
+    public SiteIndex(int siteId) {
+        this.siteId = siteId;
+    }
+
+    public void addPage(int pageId, int pageLength, Map<Integer, Float> ranks) {
+        lock.readLock().lock();
+        try {
+            ranks.forEach((lemmaId, rank) ->
+                    live.computeIfAbsent(lemmaId, id -> new CompressedPostingList()).add(pageId, rank));
+            putPageLength(pageId, pageLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void addPostingList(int lemmaId, PostingList postingList) {
+        lock.readLock().lock();
+        try {
+            live.computeIfAbsent(lemmaId, id -> new CompressedPostingList()).addAll(postingList);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void addPageLength(int pageId, int pageLength) {
+        lock.readLock().lock();
+        try {
+            putPageLength(pageId, pageLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number and average length of searchable pages for ranking, kept up to date without reading DB
+     */
+    public SiteStatistics getStatistics() {
+        int[] deleted = getDeletedPages();
+        int pages;
+        long length;
+        synchronized (statisticsLock) {
+            if (statisticsDeletedPages != deleted) {
+                int[] deletedLengths = getPageLengths(deleted, deleted.length);
+                deletedIndexedPages = 0;
+                deletedIndexedLength = 0;
+                for (int deletedLength : deletedLengths) {
+                    if (deletedLength > 0) {
+                        deletedIndexedPages++;
+                        deletedIndexedLength += deletedLength;
+                    }
+                }
+                statisticsDeletedPages = deleted;
+            }
+            pages = indexedPages.get() - deletedIndexedPages;
+            length = indexedLength.get() - deletedIndexedLength;
+        }
+        return new SiteStatistics(Math.max(0, pages), pages <= 0 ? 0 : (double) length / pages);
+    }
+
+    public void removePage(int pageId) {
+        synchronized (deletedPagesLock) {
+            appendDeletedPage(pageId);
+            deletedPagesChanged = true;
+        }
+        unsavedDeletions = true;
+    }
+
+    /**
+     * Merges posting lists of the lemma from segments and memory, skipping deleted pages
+     */
+    public PostingList read(int lemmaId) {
+        List<PostingList> parts = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (IndexSegment segment : segments) {
+                PostingList postingList = segment.read(lemmaId);
+                if (postingList != null) {
+                    parts.add(postingList);
+                }
+            }
+            addDecoded(parts, frozen.get(lemmaId));
+            addDecoded(parts, live.get(lemmaId));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (parts.isEmpty()) {
+            return PostingList.EMPTY;
+        }
+        int[] deleted = getDeletedPages();
+        if (parts.size() == 1 && deleted.length == 0) {
+            return parts.get(0);
+        }
+        // Each page is indexed once, so parts never share pages
+        PostingList.Builder builder = new PostingList.Builder();
+        for (PostingList part : parts) {
+            for (int i = 0; i < part.size(); i++) {
+                int pageId = part.getPageIds()[i];
+                if (deleted.length == 0 || Arrays.binarySearch(deleted, pageId) < 0) {
+                    builder.add(pageId, part.getRanks()[i]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Moves live posting lists aside to be written as a segment, new pages go to empty live lists
+     *
+     * @return posting lists by lemma id, null if there are no new pages and deletions to write
+     */
+    public SortedMap<Integer, PostingList> freeze() {
+        lock.writeLock().lock();
+        try {
+            if (live.isEmpty() && livePageLengths.isEmpty() && !unsavedDeletions) {
+                return null;
+            }
+            unsavedDeletions = false;
+            frozen = live;
+            frozenPageLengths = livePageLengths;
+            live = new ConcurrentHashMap<>();
+            livePageLengths = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        SortedMap<Integer, PostingList> postingLists = new TreeMap<>();
+        frozen.forEach((lemmaId, postingList) -> postingLists.put(lemmaId, postingList.decode(null)));
+        return postingLists;
+    }
+
+    public SortedMap<Integer, Integer> getFrozenPageLengths() {
+        return new TreeMap<>(frozenPageLengths);
+    }
+
+    /**
+     * @param pageIds ids of site pages
+     * @param size    number of pages to look up
+     * @return length of each page, 0 if the page is unknown
+     */
+    public int[] getPageLengths(int[] pageIds, int size) {
+        int[] pageLengths = new int[size];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                Integer pageLength = livePageLengths.get(pageIds[i]);
+                if (pageLength == null) {
+                    pageLength = frozenPageLengths.get(pageIds[i]);
+                }
+                if (pageLength != null) {
+                    pageLengths[i] = pageLength;
+                    continue;
+                }
+                for (int j = segments.size() - 1; j >= 0; j--) {
+                    int segmentPageLength = segments.get(j).getPageLength(pageIds[i]);
+                    if (segmentPageLength >= 0) {
+                        pageLengths[i] = segmentPageLength;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return pageLengths;
+    }
+
+    /**
+     * Returns frozen posting lists to memory after failed segment write
+     */
+    public void unfreeze() {
+        lock.writeLock().lock();
+        try {
+            frozen.forEach((lemmaId, postingList) ->
+                    live.computeIfAbsent(lemmaId, id -> new CompressedPostingList()).addAll(postingList.decode(null)));
+            livePageLengths.putAll(frozenPageLengths);
+            unsavedDeletions = true;
+            frozen = Collections.emptyMap();
+            frozenPageLengths = Collections.emptyMap();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes segment written from frozen posting lists searchable instead of them
+     */
+    public void install(IndexSegment segment) {
+        lock.writeLock().lock();
+        try {
+            List<IndexSegment> newSegments = new ArrayList<>(segments);
+            newSegments.add(segment);
+            segments = newSegments;
+            frozen = Collections.emptyMap();
+            frozenPageLengths = Collections.emptyMap();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces merged segments with the result of their merge
+     *
+     * @param appliedDeletions deleted pages removed from posting lists by the merge
+     */
+    public void replace(List<IndexSegment> merged, IndexSegment result, int[] appliedDeletions) {
+        // Applied deletions leave the index for good, their lengths are read before merged segments go
+        for (int pageLength : getPageLengths(appliedDeletions, appliedDeletions.length)) {
+            if (pageLength > 0) {
+                indexedPages.decrementAndGet();
+                indexedLength.addAndGet(-pageLength);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            List<IndexSegment> newSegments = new ArrayList<>(segments);
+            newSegments.removeAll(merged);
+            newSegments.add(result);
+            newSegments.sort(Comparator.comparingInt(IndexSegment::getSequence));
+            segments = newSegments;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (deletedPagesLock) {
+            int[] current = getDeletedPages();
+            deletedPagesCount = 0;
+            for (int pageId : current) {
+                if (Arrays.binarySearch(appliedDeletions, pageId) < 0) {
+                    appendDeletedPage(pageId);
+                }
+            }
+            deletedPagesChanged = true;
+        }
+    }
+
+    /**
+     * Sets segments opened at start, deleted pages recorded in them are skipped again
+     */
+    public void open(List<IndexSegment> openedSegments) {
+        lock.writeLock().lock();
+        try {
+            List<IndexSegment> newSegments = new ArrayList<>(openedSegments);
+            newSegments.sort(Comparator.comparingInt(IndexSegment::getSequence));
+            segments = newSegments;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (IndexSegment segment : openedSegments) {
+            for (int pageLength : segment.getPageLengths()) {
+                countPage(pageLength);
+            }
+            synchronized (deletedPagesLock) {
+                for (int pageId : segment.getDeletedPages()) {
+                    appendDeletedPage(pageId);
+                }
+                deletedPagesChanged = true;
+            }
+            nextSequence.accumulateAndGet(segment.getSequence() + 1, Math::max);
+        }
+    }
+
+    /**
+     * @return max page id covered by segments, pages with greater ids are only in memory or DB
+     */
+    public int getSegmentMaxPageId() {
+        int maxPageId = 0;
+        for (IndexSegment segment : getSegments()) {
+            maxPageId = Math.max(maxPageId, segment.getMaxPageId());
+        }
+        return maxPageId;
+    }
+
+    /**
+     * @return sorted ids of pages in segments, deleted pages included
+     */
+    public int[] getSegmentPageIds() {
+        List<IndexSegment> currentSegments = getSegments();
+        int total = 0;
+        for (IndexSegment segment : currentSegments) {
+            total += segment.getPageCount();
+        }
+        int[] pageIds = new int[total];
+        int size = 0;
+        for (IndexSegment segment : currentSegments) {
+            int[] segmentPageIds = segment.getPageIds();
+            System.arraycopy(segmentPageIds, 0, pageIds, size, segmentPageIds.length);
+            size += segmentPageIds.length;
+        }
+        Arrays.sort(pageIds);
+        return pageIds;
+    }
+
+    public List<IndexSegment> getSegments() {
+        lock.readLock().lock();
+        try {
+            return segments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return sorted ids of deleted pages, the array is shared and must not be changed
+     */
+    public int[] getDeletedPages() {
+        if (!deletedPagesChanged) {
+            return deletedPages;
+        }
+        synchronized (deletedPagesLock) {
+            if (deletedPagesChanged) {
+                int[] sorted = Arrays.copyOf(deletedPagesBuffer, deletedPagesCount);
+                Arrays.sort(sorted);
+                int size = 0;
+                for (int i = 0; i < sorted.length; i++) {
+                    if (i == 0 || sorted[i] != sorted[i - 1]) {
+                        sorted[size++] = sorted[i];
+                    }
+                }
+                sorted = Arrays.copyOf(sorted, size);
+                deletedPagesBuffer = Arrays.copyOf(sorted, Math.max(16, size));
+                deletedPagesCount = size;
+                deletedPages = sorted;
+                deletedPagesChanged = false;
+            }
+            return deletedPages;
+        }
+    }
+
+    public int nextSequence() {
+        return nextSequence.getAndIncrement();
+    }
+
+    public int getSiteId() {
+        return siteId;
+    }
+
+    private static void addDecoded(List<PostingList> parts, CompressedPostingList postingList) {
+        if (postingList != null) {
+            parts.add(postingList.decode(null));
+        }
+    }
+
+    private void putPageLength(int pageId, int pageLength) {
+        if (livePageLengths.put(pageId, pageLength) == null) {
+            countPage(pageLength);
+        }
+    }
+
+    /**
+     * Pages without words have no postings and do not count for ranking
+     */
+    private void countPage(int pageLength) {
+        if (pageLength > 0) {
+            indexedPages.incrementAndGet();
+            indexedLength.addAndGet(pageLength);
+        }
+    }
+
+    private void appendDeletedPage(int pageId) {
+        if (deletedPagesCount == deletedPagesBuffer.length) {
+            deletedPagesBuffer = Arrays.copyOf(deletedPagesBuffer, deletedPagesCount * 2);
+        }
+        deletedPagesBuffer[deletedPagesCount++] = pageId;
+    }
+}
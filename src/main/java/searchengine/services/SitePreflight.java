@@ -0,0 +1,179 @@
+package searchengine.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.JsoupConnectionSettings;
+import searchengine.model.Site;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads robots.txt and sitemaps of a site before its crawl. Requests wait in the host queue like page
+ * requests, so they keep politeness limits of the site and hold no thread while waiting
+ */
+@Component
+public class SitePreflight {
+    private static final Logger LOGGER = LogManager.getLogger(SitePreflight.class);
+    private static final int MAX_SITEMAPS = 50;
+    private static final int MAX_SITEMAP_URLS = 200_000;
+
+    private final PageFetcher pageFetcher;
+    private final CrawlerSettings crawlerSettings;
+    private final JsoupConnectionSettings connectionSettings;
+    private final UrlCanonicalizer urlCanonicalizer;
+
+    public SitePreflight(PageFetcher pageFetcher, CrawlerSettings crawlerSettings,
+                         JsoupConnectionSettings connectionSettings, UrlCanonicalizer urlCanonicalizer) {
+        this.pageFetcher = pageFetcher;
+        this.crawlerSettings = crawlerSettings;
+        this.connectionSettings = connectionSettings;
+        this.urlCanonicalizer = urlCanonicalizer;
+    }
+
+    /**
+     * Missing robots.txt allows everything. Unavailable one allows everything too, with a warning
+     */
+    public CompletableFuture<RobotsRules> readRobots(Site site, HostRateLimiter hostRateLimiter) {
+        if (!crawlerSettings.isObeyRobots()) {
+            return CompletableFuture.completedFuture(RobotsRules.ALLOW_ALL);
+        }
+
+        String robotsUrl = getRoot(site.getUrl()) + "/robots.txt";
+        return fetch(robotsUrl, hostRateLimiter).thenApply(robots -> {
+            if (robots.getBody() == null) {
+                if (robots.getCode() != 404 && robots.getCode() != 410) {
+                    LOGGER.warn(robotsUrl + " is not available, code " + robots.getCode());
+                }
+                return RobotsRules.ALLOW_ALL;
+            }
+            return RobotsRules.parse(robots.getBody(), connectionSettings.getUserAgent());
+        }).exceptionally(exception -> {
+            LOGGER.warn(robotsUrl + " is not available", exception);
+            return RobotsRules.ALLOW_ALL;
+        });
+    }
+
+    /**
+     * Reads sitemaps listed in robots.txt or sitemap.xml of the site root, following sitemap indexes
+     *
+     * @return urls of site pages with their last modification time, null time if the sitemap does not give it
+     */
+    public CompletableFuture<Map<String, Instant>> readSitemaps(Site site, RobotsRules robots,
+                                                               HostRateLimiter hostRateLimiter) {
+        Map<String, Instant> pages = new LinkedHashMap<>();
+        if (!crawlerSettings.isUseSitemaps()) {
+            return CompletableFuture.completedFuture(pages);
+        }
+
+        Deque<String> sitemaps = new ArrayDeque<>(robots.getSitemaps());
+        if (sitemaps.isEmpty()) {
+            sitemaps.add(getRoot(site.getUrl()) + "/sitemap.xml");
+        }
+        Set<String> readSitemaps = new HashSet<>();
+        return readNextSitemap(site, sitemaps, readSitemaps, pages, hostRateLimiter).handle((ignored, exception) -> {
+            if (exception != null) {
+                LOGGER.warn("Sitemaps of " + site.getUrl() + " are read partly", exception);
+            }
+            LOGGER.info("Sitemaps of " + site.getUrl() + ": " + readSitemaps.size() + " read, "
+                    + pages.size() + " pages");
+            return pages;
+        });
+    }
+
+    /**
+     * Sitemaps are read one after another, sitemap index adds its sitemaps to the queue
+     */
+    private CompletableFuture<Void> readNextSitemap(Site site, Deque<String> sitemaps, Set<String> readSitemaps,
+                                                    Map<String, Instant> pages, HostRateLimiter hostRateLimiter) {
+        String sitemapUrl;
+        do {
+            if (sitemaps.isEmpty() || readSitemaps.size() >= MAX_SITEMAPS || pages.size() >= MAX_SITEMAP_URLS) {
+                return CompletableFuture.completedFuture(null);
+            }
+            sitemapUrl = sitemaps.poll();
+        } while (!readSitemaps.add(sitemapUrl));
+
+        String url = sitemapUrl;
+        return fetch(url, hostRateLimiter).thenCompose(sitemap -> {
+            if (sitemap.getBody() != null) {
+                parseSitemap(site, url, sitemap.getBody(), sitemaps, pages);
+            }
+            return readNextSitemap(site, sitemaps, readSitemaps, pages, hostRateLimiter);
+        });
+    }
+
+    private void parseSitemap(Site site, String sitemapUrl, String body, Deque<String> sitemaps,
+                              Map<String, Instant> pages) {
+        Document document = Jsoup.parse(body, sitemapUrl, Parser.xmlParser());
+        for (Element entry : document.select("sitemapindex > sitemap > loc")) {
+            sitemaps.add(entry.text().trim());
+        }
+        for (Element entry : document.select("urlset > url")) {
+            Element loc = entry.selectFirst("loc");
+            String url = loc == null ? "" : urlCanonicalizer.canonicalize(loc.text());
+            if (url.startsWith(site.getUrl()) && pages.size() < MAX_SITEMAP_URLS) {
+                Element lastmod = entry.selectFirst("lastmod");
+                pages.put(url, lastmod == null ? null : parseLastmod(lastmod.text().trim()));
+            }
+        }
+    }
+
+    /**
+     * Loads the resource in its turn of the host queue. The connection is released before
+     * the result is handed on, so parsing does not hold it
+     */
+    private CompletableFuture<FetchedPage> fetch(String url, HostRateLimiter hostRateLimiter) {
+        CompletableFuture<FetchedPage> result = new CompletableFuture<>();
+        hostRateLimiter.submit(() -> {
+            FetchedPage fetchedPage = null;
+            RuntimeException failure = null;
+            try {
+                fetchedPage = pageFetcher.fetch(url);
+            } catch (RuntimeException exception) {
+                failure = exception;
+            } finally {
+                hostRateLimiter.release();
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(fetchedPage);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sitemap dates are W3C datetime: a date or a date with time and zone
+     */
+    private static Instant parseLastmod(String lastmod) {
+        try {
+            return OffsetDateTime.parse(lastmod).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // May be a date only
+        }
+        try {
+            return LocalDate.parse(lastmod).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String getRoot(String siteUrl) {
+        URI uri = URI.create(siteUrl.trim());
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+}
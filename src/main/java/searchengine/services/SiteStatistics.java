@@ -0,0 +1,17 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+/**
+ * Page count and average page length of a site for ranking
+ */
+@Getter
+public class SiteStatistics {
+    private final int pageCount;
+    private final double averagePageLength;
+
+    public SiteStatistics(int pageCount, double averagePageLength) {
+        this.pageCount = pageCount;
+        this.averagePageLength = averagePageLength;
+    }
+}
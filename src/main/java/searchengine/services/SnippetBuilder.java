@@ -0,0 +1,188 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.Page;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds snippets of result pages in parallel. Text is cut around the part of the page
+ * with most query lemmas found by positions stored at crawl time,
+ * pages indexed without positions get snippet from {@link TextProcessor#createSnippet}
+ */
+@Component
+public class SnippetBuilder {
+    private final TextProcessor textProcessor;
+    private final int snippetLength;
+    private final ExecutorService executor;
+
+    public SnippetBuilder(TextProcessor textProcessor, SearchSettings settings) {
+        this.textProcessor = textProcessor;
+        this.snippetLength = settings.getSnippetLength();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, settings.getSnippetThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "search-snippets-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param positions positions of query lemmas on each page, by page id
+     * @return snippet of each page in the same order
+     */
+    public List<String> build(List<Page> pages, Map<Integer, List<int[]>> positions, String query, int wordsAround) {
+        List<CompletableFuture<String>> snippets = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            List<int[]> pagePositions = positions.get(page.getId());
+            snippets.add(CompletableFuture.supplyAsync(() -> pagePositions == null
+                    ? textProcessor.createSnippet(page.getText(), query, wordsAround)
+                    : cut(page.getText(), pagePositions), executor));
+        }
+
+        List<String> result = new ArrayList<>(pages.size());
+        snippets.forEach(snippet -> result.add(snippet.join()));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Cuts the text around the densest group of query lemmas and highlights them
+     *
+     * @param positions char offsets of each query lemma in the text
+     */
+    String cut(String text, List<int[]> positions) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+
+        // Occurrences as (position, lemma index) packed in longs, sorted by position
+        int count = 0;
+        for (int[] lemmaPositions : positions) {
+            count += lemmaPositions.length;
+        }
+        long[] occurrences = new long[count];
+        int size = 0;
+        for (int lemma = 0; lemma < positions.size(); lemma++) {
+            for (int position : positions.get(lemma)) {
+                if (position < text.length()) {
+                    occurrences[size++] = ((long) position << 32) | lemma;
+                }
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        occurrences = Arrays.copyOf(occurrences, size);
+        Arrays.sort(occurrences);
+
+        int[] bestWindow = findBestWindow(occurrences, positions.size());
+        int windowStart = (int) (occurrences[bestWindow[0]] >>> 32);
+        int windowEnd = wordEnd(text, (int) (occurrences[bestWindow[1]] >>> 32));
+
+        int padding = Math.max(0, snippetLength - (windowEnd - windowStart)) / 2;
+        int start = wordStart(text, Math.max(0, windowStart - padding), windowStart);
+        int end = wordBoundaryBefore(text, Math.min(text.length(), Math.max(windowEnd, start + snippetLength)), windowEnd);
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append("... ");
+        }
+        int written = start;
+        for (long occurrence : occurrences) {
+            int position = (int) (occurrence >>> 32);
+            if (position < written || position >= end) {
+                continue;
+            }
+            int positionEnd = Math.min(wordEnd(text, position), end);
+            snippet.append(text, written, position)
+                    .append("<b>").append(text, position, positionEnd).append("</b>");
+            written = positionEnd;
+        }
+        snippet.append(text, written, end);
+        if (end < text.length()) {
+            snippet.append(" ...");
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Finds group of occurrences not longer than snippet with most distinct lemmas, then most occurrences
+     *
+     * @return indexes of the first and the last occurrence of the group
+     */
+    private int[] findBestWindow(long[] occurrences, int lemmaCount) {
+        int[] lemmaCounts = new int[lemmaCount];
+        int distinct = 0;
+        int[] best = {0, 0};
+        int bestDistinct = 0;
+        int bestSize = 0;
+
+        int first = 0;
+        for (int last = 0; last < occurrences.length; last++) {
+            if (lemmaCounts[(int) occurrences[last]]++ == 0) {
+                distinct++;
+            }
+            while ((occurrences[last] >>> 32) - (occurrences[first] >>> 32) > snippetLength) {
+                if (--lemmaCounts[(int) occurrences[first]] == 0) {
+                    distinct--;
+                }
+                first++;
+            }
+            int windowSize = last - first + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && windowSize > bestSize)) {
+                bestDistinct = distinct;
+                bestSize = windowSize;
+                best[0] = first;
+                best[1] = last;
+            }
+        }
+        return best;
+    }
+
+    private static int wordEnd(String text, int position) {
+        int end = position;
+        while (end < text.length() && Tokenizer.isWordChar(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Moves start forward to the beginning of a word, not further than the limit
+     */
+    private static int wordStart(String text, int start, int limit) {
+        if (start == 0) {
+            return 0;
+        }
+        int position = start;
+        while (position < limit && !Character.isWhitespace(text.charAt(position - 1))) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Moves end back to a whitespace, not before the limit
+     */
+    private static int wordBoundaryBefore(String text, int end, int limit) {
+        if (end == text.length()) {
+            return end;
+        }
+        int position = end;
+        while (position > limit && !Character.isWhitespace(text.charAt(position))) {
+            position--;
+        }
+        return position;
+    }
+}
@@ -10,6 +10,7 @@ import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
+import searchengine.model.Generation;
 import searchengine.model.Site;
 
 import java.time.ZoneId;
@@ -27,6 +28,12 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepository pageRepository;
     @Autowired
     private final LemmaRepository lemmaRepository;
+    @Autowired
+    private final CrawlScheduler crawlScheduler;
+    @Autowired
+    private final TextProcessor textProcessor;
+    @Autowired
+    private final SearchResultCache searchResultCache;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -40,11 +47,18 @@ public class StatisticsServiceImpl implements StatisticsService {
         total.setLemmas(totalLemmas);
 
         total.setIndexing(IndexingServiceImpl.inProgress);
+        total.setLemmaCacheHitRate(textProcessor.getLemmaCache().getHitRate());
+        total.setSearchCacheHitRate(searchResultCache.getHitRate());
+        total.setSearchCacheHits(searchResultCache.getHits());
+        total.setSearchCacheMisses(searchResultCache.getMisses());
 
         //----------Fill in the detailed statistics-------------
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
         List<Site> sitesList = siteRepository.findAll();
         for (Site site : sitesList) {
+            if (site.getGeneration() == Generation.RETIRED) {
+                continue;
+            }
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(site.getName());
             item.setUrl(site.getUrl());
@@ -53,6 +67,7 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setPages(pages);
             int lemmas = lemmaRepository.countBySiteId(siteId);
             item.setLemmas(lemmas);
+            item.setQueuedRequests(crawlScheduler.getQueueDepth(site.getUrl()));
             item.setStatus(site.getStatus().toString());
             item.setError(site.getLastError());
             item.setStatusTime(ZonedDateTime.of(site.getStatusTime(), ZoneId.systemDefault())
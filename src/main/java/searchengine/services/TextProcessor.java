@@ -1,74 +1,80 @@
 package searchengine.services;
 
+import lombok.Getter;
 import org.apache.lucene.morphology.WrongCharaterException;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import searchengine.config.MorphologySettings;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import static searchengine.Main.textProcessor;
 
 @Component
 public class TextProcessor {
-    private static final String[] FUNCTIONAL_PROPERTIES = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+    private static final Set<String> FUNCTIONAL_PROPERTIES = Set.of("МЕЖД", "ПРЕДЛ", "СОЮЗ");
+    private static final Set<String> ENGLISH_FUNCTIONAL_PROPERTIES = Set.of("CONJ", "PREP", "ARTICLE", "INT", "PART");
+    private static final Set<String> ENGLISH_STOP_WORDS = Set.of(
+            "a", "an", "the", "and", "or", "but", "if", "of", "to", "in", "on", "at", "by", "for", "with",
+            "from", "as", "is", "are", "was", "were", "be", "been", "it", "its", "this", "that", "these", "those");
     private final RussianLuceneMorphology luceneMorphology;
+    private final EnglishLuceneMorphology englishMorphology;
+    @Getter
+    private final LemmaCache lemmaCache;
 
     public TextProcessor() throws IOException {
+        this(new MorphologySettings());
+    }
+
+    @Autowired
+    public TextProcessor(MorphologySettings settings) throws IOException {
         this.luceneMorphology = new RussianLuceneMorphology();
+        this.englishMorphology = settings.isEnglish() ? new EnglishLuceneMorphology() : null;
+        this.lemmaCache = new LemmaCache(settings.getCacheSize());
     }
 
     /**
-     * Counts Lemmas in given RAW text
+     * Counts lemmas of the page title and text, remembering positions of lemmas in the text for snippets
      *
-     * @param text raw text of web page
-     * @return Map of lemmas and count of its appearance on given page
+     * @param title          page title, may be null
+     * @param text           plain text of the page body
+     * @param tokenPositions also remember ordinal numbers of all lemma occurrences in the text
+     * @return Map of lemmas and their occurrences on the page
      */
-    public Map<String, Integer> countLemmas(String text) {
-        String[] words = prepareText(text).split(" ");
-        Map<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            String lemma = getLemma(word);
-            lemmas.put(lemma, lemmas.getOrDefault(lemma, 0) + 1);
+    public Map<String, LemmaOccurrences> countLemmas(String title, String text, boolean tokenPositions) {
+        Map<String, LemmaOccurrences> lemmas = new HashMap<>();
+        if (title != null) {
+            Tokenizer.tokenize(title, (word, type, start, end) ->
+                    lemmas.computeIfAbsent(getLemma(word, type), lemma -> new LemmaOccurrences()).add());
+        }
+        if (text != null) {
+            int[] tokenCount = new int[1];
+            Tokenizer.tokenize(text, (word, type, start, end) -> {
+                int tokenPosition = tokenPositions ? tokenCount[0] : -1;
+                tokenCount[0]++;
+                lemmas.computeIfAbsent(getLemma(word, type), lemma -> new LemmaOccurrences()).add(start, tokenPosition);
+            });
         }
-
         return lemmas;
     }
 
     /**
-     * Method will clean the text leaving only words and numbers LowerCase
-     *
-     * @param text text to clean
-     * @return text without html/css tags and punctuation
+     * Lemmas of words of a query phrase in their order, stop words give empty lemmas and keep their place
      */
-    public String prepareText(String text) {
-        text = text.toLowerCase(Locale.ROOT)
-                .replaceAll("<script.*?</script>", " ")
-                .replaceAll("<[^>]*>", " ")
-                .replaceAll("([^а-яa-z\\d])", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
-
-        return text;
+    public List<String> getPhraseLemmas(String phrase) {
+        List<String> lemmas = new ArrayList<>();
+        Tokenizer.tokenize(phrase, (word, type, start, end) -> lemmas.add(getLemma(word, type)));
+        return lemmas;
     }
 
     public boolean wordIsFunctional(String word) {
-        if (word.length() == 0) {
-            return false;
-        } else if (wordIsInLatin(word) || wordIsNumeric(word)) {
-            return false;
-        }
-
-        List<String> morphInfo = luceneMorphology.getMorphInfo(word);
-
-        for (String property : FUNCTIONAL_PROPERTIES) {
-            if (morphInfo.get(0).contains(property)) {
-                return true;
-            }
+        if (wordsIsCyrillic(word)) {
+            return lemmaCache.get(word, this::analyzeCyrillicWord).isFunctional();
+        } else if (wordIsLatin(word) && englishMorphology != null) {
+            return lemmaCache.get(word, this::analyzeEnglishWord).isFunctional();
         }
 
         return false;
@@ -91,14 +97,9 @@ public class TextProcessor {
         }
 
         if (wordsIsCyrillic(word)) {
-
-            try {
-                List<String> morphInfo = luceneMorphology.getMorphInfo(word);
-                return morphInfo.get(0).
-                        split("\\|")[0];
-            } catch (WrongCharaterException exception) {
-                return "";
-            }
+            return getCyrillicLemma(word);
+        } else if (wordIsLatin(word)) {
+            return getEnglishLemma(word);
         } else if (wordIsNumeric(word)) {
             return word;
         } else if (wordIsInLatin(word)) {
@@ -110,34 +111,131 @@ public class TextProcessor {
         return "";
     }
 
+    /**
+     * Lemma of the word produced by {@link Tokenizer}, its type is already known
+     */
+    private String getLemma(String word, Tokenizer.TokenType type) {
+        if (type == Tokenizer.TokenType.CYRILLIC) {
+            return getCyrillicLemma(word);
+        } else if (type == Tokenizer.TokenType.LATIN) {
+            return getEnglishLemma(word);
+        }
+        return word;
+    }
+
+    /**
+     * Returns lemma of Russian word, or empty string for functional words
+     */
+    private String getCyrillicLemma(String word) {
+        LemmaCache.WordForm wordForm = lemmaCache.get(word, this::analyzeCyrillicWord);
+        return wordForm.isFunctional() ? "" : wordForm.getLemma();
+    }
+
+    /**
+     * Returns lemma of English word, or empty string for stop and functional words
+     */
+    private String getEnglishLemma(String word) {
+        if (englishMorphology == null) {
+            return word;
+        }
+
+        LemmaCache.WordForm wordForm = lemmaCache.get(word, this::analyzeEnglishWord);
+        return wordForm.isFunctional() ? "" : wordForm.getLemma();
+    }
+
+    /**
+     * Gets lemma and functional flag of the word with one morphology lookup
+     */
+    private LemmaCache.WordForm analyzeCyrillicWord(String word) {
+        try {
+            String info = luceneMorphology.getMorphInfo(word).get(0);
+            int separator = info.indexOf('|');
+            String lemma = separator == -1 ? info : info.substring(0, separator);
+
+            return new LemmaCache.WordForm(lemma, FUNCTIONAL_PROPERTIES.contains(getPartOfSpeech(info)));
+        } catch (WrongCharaterException exception) {
+            return new LemmaCache.WordForm("", false);
+        }
+    }
+
+    private LemmaCache.WordForm analyzeEnglishWord(String word) {
+        if (ENGLISH_STOP_WORDS.contains(word)) {
+            return new LemmaCache.WordForm(word, true);
+        }
+
+        try {
+            String info = englishMorphology.getMorphInfo(word).get(0);
+            int separator = info.indexOf('|');
+            String lemma = separator == -1 ? info : info.substring(0, separator);
+
+            return new LemmaCache.WordForm(lemma, ENGLISH_FUNCTIONAL_PROPERTIES.contains(getPartOfSpeech(info)));
+        } catch (WrongCharaterException exception) {
+            return new LemmaCache.WordForm(word, false);
+        }
+    }
+
     public boolean wordsIsCyrillic(String word) {
-        return word.matches("[а-я]+");
+        if (word.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'а' || c > 'я') {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private boolean wordIsInLatin(String word) {
-        if (word.length() == 0) {
+    private boolean wordIsLatin(String word) {
+        if (word.isEmpty()) {
             return false;
         }
 
-        return word.matches(".*[a-z]+.*");
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean wordIsInLatin(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                return true;
+            }
+        }
+        return false;
     }
 
     private boolean wordIsNumeric(String word) {
-        String regex = ".*\\d+.*";
-        Pattern pattern = Pattern.compile(regex);
-        return pattern.matcher(word).matches();
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
     }
 
     public String removePunctuation(String query) {
         return query.replaceAll("[^а-яa-z0-9]", " ").trim();
     }
 
+    /**
+     * Creates snippet around the first query word found in plain text of the page
+     */
     public String createSnippet(String text, String query, int wordsAround) {
-        Document document = Jsoup.parse(text);
-        text = document.body().text();
+        if (text == null || text.isBlank()) {
+            return null;
+        }
 
-        String textLowerCase = text.toLowerCase();
-        String preparedText = stripText(textLowerCase);
+        text = text.trim();
+        String preparedText = text.toLowerCase();
 
         String textLemmasForSnippet = getLemmasForSnippet(preparedText);
         String[] textLemmasSplit = textLemmasForSnippet.split("\\s+");
@@ -186,12 +284,24 @@ public class TextProcessor {
 
             word = word.replaceAll("([^а-яa-z\\d])", "");
 
-            lemmas.append(getLemma(word)).append(" ");
+            // Words without lemma are kept as is, so lemmas stay aligned with words of the text
+            String lemma = getLemma(word);
+            lemmas.append(lemma.isEmpty() ? word : lemma).append(" ");
         }
 
         return lemmas.toString();
     }
 
+    /**
+     * Morph info is "lemma|code PART_OF_SPEECH grammemes", e.g. "в|l ПРЕДЛ" or "run|W VERB inf"
+     *
+     * @return part of speech token, empty if the info has none
+     */
+    static String getPartOfSpeech(String info) {
+        String[] tokens = info.substring(info.indexOf('|') + 1).trim().split("\\s+");
+        return tokens.length > 1 ? tokens[1] : "";
+    }
+
     private Integer getIndexOfWordInArray(String[] textLemmasSplit, String firstLemma) {
         int index = -1;
         for (int i = 0; i < textLemmasSplit.length; i++) {
@@ -204,15 +314,6 @@ public class TextProcessor {
         return index;
     }
 
-    private String stripText(String textLowerCase) {
-
-        //regex to remove all scripts
-        return textLowerCase.replaceAll("(?s)<script.*</script>", " ")
-                .replaceAll("<[^>]*>", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
-    }
-
     private boolean arrayContains(String word, String[] array) {
         for (String s : array) {
             if (s.contains(word)) {
@@ -0,0 +1,115 @@
+package searchengine.services;
+
+/**
+ * Splits text into lower case words of Cyrillic, Latin letters and digits in one pass, without regular expressions
+ */
+public final class Tokenizer {
+    /**
+     * Longer tokens are not words (hashes, encoded data) and are skipped
+     */
+    public static final int MAX_TOKEN_LENGTH = 100;
+
+    private static final int CYRILLIC = 1;
+    private static final int LATIN = 2;
+    private static final int DIGIT = 4;
+
+    public enum TokenType {
+        CYRILLIC,
+        LATIN,
+        NUMERIC,
+        MIXED
+    }
+
+    public interface TokenConsumer {
+        /**
+         * @param token lower case word
+         * @param type  characters the word consists of
+         * @param start index of the first char of the word in the text
+         * @param end   index after the last char of the word in the text
+         */
+        void accept(String token, TokenType type, int start, int end);
+    }
+
+    private Tokenizer() {
+    }
+
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        char[] buffer = new char[MAX_TOKEN_LENGTH];
+        int size = 0;
+        int start = 0;
+        int charClasses = 0;
+        boolean tooLong = false;
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = toLowerCase(text.charAt(i));
+            int charClass = charClass(c);
+
+            if (charClass != 0) {
+                if (size == 0 && !tooLong) {
+                    start = i;
+                }
+                if (size < MAX_TOKEN_LENGTH) {
+                    buffer[size++] = c;
+                    charClasses |= charClass;
+                } else {
+                    tooLong = true;
+                }
+                continue;
+            }
+
+            if (size > 0 && !tooLong) {
+                consumer.accept(new String(buffer, 0, size), tokenType(charClasses), start, i);
+            }
+            size = 0;
+            charClasses = 0;
+            tooLong = false;
+        }
+
+        if (size > 0 && !tooLong) {
+            consumer.accept(new String(buffer, 0, size), tokenType(charClasses), start, length);
+        }
+    }
+
+    /**
+     * Returns class of the char lowered by {@link #toLowerCase(char)}, 0 for separators
+     */
+    private static int charClass(char c) {
+        if (c >= 'а' && c <= 'я') {
+            return CYRILLIC;
+        } else if (c >= 'a' && c <= 'z') {
+            return LATIN;
+        } else if (c >= '0' && c <= '9') {
+            return DIGIT;
+        }
+        return 0;
+    }
+
+    public static char toLowerCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        } else if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        } else if (c == 'ё' || c == 'Ё') {
+            return 'е';
+        }
+        return c;
+    }
+
+    public static boolean isWordChar(char c) {
+        return charClass(toLowerCase(c)) != 0;
+    }
+
+    private static TokenType tokenType(int charClasses) {
+        switch (charClasses) {
+            case CYRILLIC:
+                return TokenType.CYRILLIC;
+            case LATIN:
+                return TokenType.LATIN;
+            case DIGIT:
+                return TokenType.NUMERIC;
+            default:
+                return TokenType.MIXED;
+        }
+    }
+}
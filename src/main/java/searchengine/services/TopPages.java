@@ -0,0 +1,110 @@
+package searchengine.services;
+
+/**
+ * Keeps given number of best scored pages in a binary min-heap over primitive arrays,
+ * so the worst kept page is replaced in O(log k) and other pages are never sorted
+ */
+public class TopPages {
+    private final int capacity;
+    private final int[] pageIds;
+    private final double[] scores;
+    private int size;
+
+    public TopPages(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.pageIds = new int[this.capacity];
+        this.scores = new double[this.capacity];
+    }
+
+    public void offer(int pageId, double score) {
+        if (size < capacity) {
+            pageIds[size] = pageId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (capacity > 0 && isBetter(pageId, score, 0)) {
+            pageIds[0] = pageId;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    public void offerAll(PageMatches matches) {
+        int[] matchedPageIds = matches.getPageIds();
+        double[] relevance = matches.getRelevance();
+        for (int i = 0; i < matches.getSize(); i++) {
+            // Most pages lose to the worst kept one, checked before any heap work
+            if (size == capacity && capacity > 0 && !isBetter(matchedPageIds[i], relevance[i], 0)) {
+                continue;
+            }
+            offer(matchedPageIds[i], relevance[i]);
+        }
+    }
+
+    /**
+     * Orders kept pages from best to worst, the heap is not usable for offers after that
+     */
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPageId(int index) {
+        return pageIds[index];
+    }
+
+    public double getScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Higher score is better, equal scores are ordered by page id to keep results stable between requests
+     */
+    private boolean isBetter(int pageId, double score, int index) {
+        return score > scores[index] || (score == scores[index] && pageId < pageIds[index]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBetter(pageIds[parent], scores[parent], index)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < end && isBetter(pageIds[worst], scores[worst], left)) {
+                worst = left;
+            }
+            if (right < end && isBetter(pageIds[worst], scores[worst], right)) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int pageId = pageIds[a];
+        pageIds[a] = pageIds[b];
+        pageIds[b] = pageId;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
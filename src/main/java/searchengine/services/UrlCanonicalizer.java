@@ -0,0 +1,114 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brings links to one form before they are claimed and loaded, so variants of a url are loaded once:
+ * lower case scheme and host, no default port, no dot segments and fragment,
+ * no tracking query parameters, other parameters sorted by name
+ */
+@Component
+public class UrlCanonicalizer {
+    private final List<String> ignoredParameters = new ArrayList<>();
+    private final List<String> ignoredPrefixes = new ArrayList<>();
+    private final boolean sortParameters;
+
+    public UrlCanonicalizer(CrawlerSettings settings) {
+        CrawlerSettings.Duplicates duplicates = settings.getDuplicates();
+        for (String parameter : duplicates.getIgnoredQueryParameters()) {
+            String name = parameter.trim().toLowerCase(Locale.ROOT);
+            if (name.endsWith("*")) {
+                ignoredPrefixes.add(name.substring(0, name.length() - 1));
+            } else {
+                ignoredParameters.add(name);
+            }
+        }
+        this.sortParameters = duplicates.isSortQueryParameters();
+    }
+
+    /**
+     * @param url absolute url
+     * @return canonical url, or trimmed url as is if it can't be parsed
+     */
+    public String canonicalize(String url) {
+        URI uri = parseAbsolute(url);
+        if (uri == null) {
+            return url.trim();
+        }
+
+        StringBuilder canonical = new StringBuilder(origin(uri));
+        canonical.append(uri.getRawPath() == null ? "" : uri.getRawPath());
+        String query = filterQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Parses absolute url and removes dot segments of its path. Canonical and visited url forms are both
+     * built on it, so they never disagree on the scheme, host and port
+     *
+     * @return null if the url can't be parsed or is relative
+     */
+    static URI parseAbsolute(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim()).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        return uri.getScheme() == null || uri.getRawAuthority() == null ? null : uri;
+    }
+
+    /**
+     * @return lower case scheme and host of the url, with port only if it is not the default one of the scheme
+     */
+    static String origin(URI uri) {
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost() == null ? uri.getRawAuthority().toLowerCase(Locale.ROOT)
+                : uri.getHost().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || (port == 80 && scheme.equals("http"))
+                || (port == 443 && scheme.equals("https"));
+        return defaultPort ? scheme + "://" + host : scheme + "://" + host + ":" + port;
+    }
+
+    private String filterQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !isIgnored(parameterName(parameter))) {
+                parameters.add(parameter);
+            }
+        }
+        if (sortParameters) {
+            // Stable sort keeps order of repeated parameters, it may matter to the server
+            parameters.sort(Comparator.comparing(UrlCanonicalizer::parameterName));
+        }
+        return String.join("&", parameters);
+    }
+
+    private boolean isIgnored(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return ignoredParameters.contains(lowerCaseName)
+                || ignoredPrefixes.stream().anyMatch(lowerCaseName::startsWith);
+    }
+
+    private static String parameterName(String parameter) {
+        int equals = parameter.indexOf('=');
+        return equals < 0 ? parameter : parameter.substring(0, equals);
+    }
+}
@@ -0,0 +1,74 @@
+package searchengine.services;
+
+import searchengine.config.CrawlerSettings;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * URLs already taken for parsing by any worker of one site crawl
+ */
+public class VisitedUrls {
+    private static final int BLOOM_LOCK_STRIPES = 64;
+
+    private final Set<String> urls;
+    private final BloomFilter bloomFilter;
+    private final Object[] bloomLocks;
+
+    public VisitedUrls(CrawlerSettings.VisitedUrls settings) {
+        if (settings.isBloomFilter()) {
+            urls = null;
+            bloomFilter = new BloomFilter(settings.getExpectedUrls(), settings.getFalsePositiveRate());
+            bloomLocks = new Object[BLOOM_LOCK_STRIPES];
+            for (int i = 0; i < bloomLocks.length; i++) {
+                bloomLocks[i] = new Object();
+            }
+        } else {
+            urls = ConcurrentHashMap.newKeySet();
+            bloomFilter = null;
+            bloomLocks = null;
+        }
+    }
+
+    /**
+     * Atomically marks url as visited
+     *
+     * @param url absolute url
+     * @return true if url was not visited before and the caller should parse it
+     */
+    public boolean claim(String url) {
+        String normalizedUrl = normalize(url);
+        if (urls != null) {
+            return urls.add(normalizedUrl);
+        }
+
+        // Bits of one url are set under the same lock, so only one worker can claim it
+        synchronized (bloomLocks[Math.floorMod(normalizedUrl.hashCode(), bloomLocks.length)]) {
+            return bloomFilter.put(normalizedUrl);
+        }
+    }
+
+    /**
+     * Brings url to the form used for comparison: origin as in {@link UrlCanonicalizer},
+     * no fragment and no trailing slash. Query is kept as is
+     */
+    public static String normalize(String url) {
+        URI uri = UrlCanonicalizer.parseAbsolute(url);
+        if (uri == null) {
+            return url.trim();
+        }
+
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringBuilder normalized = new StringBuilder(UrlCanonicalizer.origin(uri));
+        normalized.append(path);
+        if (uri.getRawQuery() != null) {
+            normalized.append('?').append(uri.getRawQuery());
+        }
+        return normalized.toString();
+    }
+}
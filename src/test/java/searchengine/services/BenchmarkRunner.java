@@ -0,0 +1,77 @@
+package searchengine.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+/**
+ * Minimal harness of benchmarks run by hand with {@code mvn test -Dtest=<class>}: benchmark classes are named
+ * *Benchmark, so the default test run skips them. The operation is warmed up first, then time and bytes
+ * allocated by the calling thread are measured over the given number of rounds
+ */
+final class BenchmarkRunner {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param operation runs one round and returns number of items it processed, e.g. pages or tokens
+     */
+    static Result measure(String name, int warmupRounds, int rounds, IntSupplier operation) {
+        for (int i = 0; i < warmupRounds; i++) {
+            operation.getAsInt();
+        }
+
+        long items = 0;
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            items += operation.getAsInt();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(name, items, nanos, allocated);
+    }
+
+    /**
+     * Integer system property, so sizes can be changed from the command line
+     */
+    static int intProperty(String name, int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue);
+    }
+
+    static final class Result {
+        final String name;
+        final long items;
+        final long nanos;
+        final long allocatedBytes;
+
+        private Result(String name, long items, long nanos, long allocatedBytes) {
+            this.name = name;
+            this.items = items;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double itemsPerSecond() {
+            return nanos == 0 ? 0 : items * 1e9 / nanos;
+        }
+
+        double bytesPerItem() {
+            return items == 0 ? 0 : (double) allocatedBytes / items;
+        }
+
+        /**
+         * Allocation of the measuring thread only, work handed to other threads is not counted
+         */
+        double megabytesPerSecond() {
+            return nanos == 0 ? 0 : allocatedBytes * 1e9 / nanos / (1024 * 1024);
+        }
+
+        void print(String itemName) {
+            System.out.printf("%-28s %12.0f %s/s %10.0f B/%s %8.0f MB/s%n",
+                    name, itemsPerSecond(), itemName, bytesPerItem(), itemName, megabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BloomFilterTest {
+
+    @Test
+    public void putReportsOnlyTheFirstInsertion() {
+        BloomFilter filter = new BloomFilter(1000, 0.001);
+        assertTrue(filter.put("https://example.com/a"));
+        assertFalse(filter.put("https://example.com/a"));
+        assertTrue(filter.mightContain("https://example.com/a"));
+    }
+
+    @Test
+    public void neverGivesFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("https://example.com/page/" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("https://example.com/page/" + i));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearConfigured() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("https://example.com/page/" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("https://example.com/other/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 2_000);
+    }
+}
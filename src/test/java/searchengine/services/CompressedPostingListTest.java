@@ -0,0 +1,87 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class CompressedPostingListTest {
+
+    @Test
+    public void roundTripKeepsPageIdsAndRanks() {
+        Random random = new Random(7);
+        TreeMap<Integer, Float> expected = new TreeMap<>();
+        int pageId = 0;
+        for (int i = 0; i < 10_000; i++) {
+            // Gaps of one to four varint bytes
+            pageId += 1 + random.nextInt(1 << (7 * (1 + random.nextInt(3))));
+            expected.put(pageId, random.nextFloat() * 100);
+        }
+        PostingList.Builder builder = new PostingList.Builder();
+        expected.forEach(builder::add);
+
+        PostingList decoded = CompressedPostingList.of(builder.build()).decode(null);
+        assertEquals(expected.size(), decoded.size());
+        int i = 0;
+        for (var entry : expected.entrySet()) {
+            assertEquals((int) entry.getKey(), decoded.getPageIds()[i]);
+            assertEquals(entry.getValue(), decoded.getRanks()[i], 0f);
+            i++;
+        }
+    }
+
+    @Test
+    public void outOfOrderAddsKeepListSorted() {
+        CompressedPostingList list = new CompressedPostingList();
+        list.add(10, 1f);
+        list.add(30, 3f);
+        list.add(20, 2f);
+        list.add(1, 0.1f);
+        list.add(20, 2.5f);
+
+        PostingList decoded = list.decode(null);
+        assertArrayEquals(new int[]{1, 10, 20, 30}, decoded.getPageIds());
+        assertArrayEquals(new float[]{0.1f, 1f, 2.5f, 3f}, decoded.getRanks(), 0f);
+    }
+
+    @Test
+    public void addAllMergesAndKeepsOwnRanks() {
+        CompressedPostingList list = CompressedPostingList.of(
+                new PostingList(new int[]{2, 4, 6}, new float[]{2f, 4f, 6f}));
+        list.addAll(new PostingList(new int[]{1, 4, 8}, new float[]{10f, 40f, 80f}));
+
+        PostingList decoded = list.decode(null);
+        assertArrayEquals(new int[]{1, 2, 4, 6, 8}, decoded.getPageIds());
+        assertArrayEquals(new float[]{10f, 2f, 4f, 6f, 80f}, decoded.getRanks(), 0f);
+    }
+
+    @Test
+    public void decodeSkipsDeletedPages() {
+        CompressedPostingList list = CompressedPostingList.of(
+                new PostingList(new int[]{1, 2, 3, 4}, new float[]{1f, 2f, 3f, 4f}));
+        PostingList decoded = list.decode(new int[]{2, 4, 9});
+        assertArrayEquals(new int[]{1, 3}, decoded.getPageIds());
+        assertArrayEquals(new float[]{1f, 3f}, decoded.getRanks(), 0f);
+    }
+
+    @Test
+    public void writeToGivesEncodedIdsThenRanks() throws IOException {
+        CompressedPostingList list = CompressedPostingList.of(
+                new PostingList(new int[]{5, 300}, new float[]{1.5f, 2.5f}));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        list.writeTo(new DataOutputStream(bytes));
+
+        // 5, then gap 295 in two varint bytes
+        assertEquals(3, list.getDataLength());
+        assertEquals(3 + 2 * Float.BYTES, bytes.size());
+        byte[] data = bytes.toByteArray();
+        assertEquals(5, data[0]);
+        assertEquals((byte) (295 & 0x7F | 0x80), data[1]);
+        assertEquals(295 >>> 7, data[2]);
+    }
+}
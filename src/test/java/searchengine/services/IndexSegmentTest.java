@@ -0,0 +1,53 @@
+package searchengine.services;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class IndexSegmentTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writtenSegmentIsReadBack() throws IOException {
+        SortedMap<Integer, PostingList> postingLists = new TreeMap<>();
+        postingLists.put(7, new PostingList(new int[]{10, 200, 5000}, new float[]{1f, 2f, 3f}));
+        postingLists.put(9, new PostingList(new int[]{200}, new float[]{4f}));
+        SortedMap<Integer, Integer> pageLengths = new TreeMap<>();
+        pageLengths.put(10, 100);
+        pageLengths.put(200, 250);
+        pageLengths.put(5000, 30);
+        Path file = folder.getRoot().toPath().resolve("00000001" + IndexSegment.EXTENSION);
+
+        IndexSegment written = IndexSegment.write(file, 1, 3, postingLists, pageLengths, new int[]{4, 8}, 6000);
+        IndexSegment segment = IndexSegment.open(file, 1);
+
+        for (IndexSegment read : new IndexSegment[]{written, segment}) {
+            assertEquals(3, read.getSiteId());
+            assertEquals(6000, read.getMaxPageId());
+            assertArrayEquals(new int[]{10, 200, 5000}, read.read(7).getPageIds());
+            assertArrayEquals(new float[]{1f, 2f, 3f}, read.read(7).getRanks(), 0f);
+            assertArrayEquals(new int[]{200}, read.read(9).getPageIds());
+            assertNull(read.read(8));
+            assertEquals(250, read.getPageLength(200));
+            assertEquals(-1, read.getPageLength(11));
+            assertArrayEquals(new int[]{4, 8}, read.getDeletedPages());
+        }
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test(expected = IOException.class)
+    public void fileOfOtherFormatIsRejected() throws IOException {
+        Path file = folder.newFile("00000002" + IndexSegment.EXTENSION).toPath();
+        Files.write(file, new byte[64]);
+        IndexSegment.open(file, 2);
+    }
+}
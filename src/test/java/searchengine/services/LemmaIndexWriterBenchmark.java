@@ -0,0 +1,205 @@
+package searchengine.services;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import searchengine.config.SearchSettings;
+import searchengine.model.Page;
+import searchengine.model.Site;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Statements per page and pages per second of lemma and index writes, the old per-lemma repository calls
+ * against the batched {@link LemmaIndexWriter}. No MySQL is started: statements go to a template counting
+ * them and waiting one network round trip for each, -Dbenchmark.roundTripMicros=200 by default.
+ * Server time of statements is not included, so the real gain on a loaded database is larger
+ */
+public class LemmaIndexWriterBenchmark {
+    private static final int VOCABULARY = 50_000;
+
+    private final int lemmasPerPage = BenchmarkRunner.intProperty("lemmasPerPage", 500);
+    private final int pages = BenchmarkRunner.intProperty("pages", 200);
+    private final long roundTripNanos =
+            TimeUnit.MICROSECONDS.toNanos(BenchmarkRunner.intProperty("roundTripMicros", 200));
+    private final Random random = new Random(1);
+
+    @Test
+    public void batchedWritesAgainstPerLemmaSaves() {
+        List<Map<String, LemmaOccurrences>> pageLemmas = new ArrayList<>();
+        for (int i = 0; i < pages; i++) {
+            pageLemmas.add(randomPage());
+        }
+        Site site = new Site("https://benchmark.ru", "Benchmark");
+        site.setId(1);
+
+        // Old pipeline costs the same for every page, a tenth of the pages is enough
+        CountingJdbcTemplate oldJdbc = new CountingJdbcTemplate(roundTripNanos);
+        int oldPages = Math.max(1, pages / 10);
+        BenchmarkRunner.Result before = BenchmarkRunner.measure("per-lemma saves", 0, oldPages, new PageSource() {
+            @Override
+            int write(int pageId, Map<String, LemmaOccurrences> lemmas) {
+                writePerLemma(oldJdbc, pageId, lemmas);
+                return 1;
+            }
+        }.over(pageLemmas));
+
+        CountingJdbcTemplate batchJdbc = new CountingJdbcTemplate(roundTripNanos);
+        SearchSettings searchSettings = new SearchSettings();
+        searchSettings.setSegments(false);
+        LemmaIndexWriter writer = new LemmaIndexWriter(batchJdbc, new InvertedIndex(batchJdbc, searchSettings));
+        LemmaDictionary dictionary = new LemmaDictionary(site);
+        BenchmarkRunner.Result after = BenchmarkRunner.measure("batched writer", 0, pages, new PageSource() {
+            @Override
+            int write(int pageId, Map<String, LemmaOccurrences> lemmas) {
+                Page page = new Page();
+                page.setId(pageId);
+                page.setTokenCount(lemmas.size());
+                writer.writePage(page, lemmas, dictionary);
+                return 1;
+            }
+        }.over(pageLemmas));
+        writer.flush(dictionary);
+
+        System.out.printf("%d lemmas per page, %d us per round trip%n",
+                lemmasPerPage, TimeUnit.NANOSECONDS.toMicros(roundTripNanos));
+        before.print("page");
+        after.print("page");
+        double oldStatements = (double) oldJdbc.statements / oldPages;
+        double newStatements = (double) batchJdbc.statements / pages;
+        System.out.printf("statements per page: %.1f before, %.1f after%n", oldStatements, newStatements);
+        assertTrue(newStatements * 10 < oldStatements);
+    }
+
+    /**
+     * Statements of the removed PageExtractorAction code for each lemma: findByLemma, save of the lemma,
+     * save of the lemma again and save of the index row. JPA merge of a detached entity adds a SELECT
+     * to each save, so this is the lower bound of the old cost
+     */
+    private static void writePerLemma(CountingJdbcTemplate jdbc, int pageId, Map<String, LemmaOccurrences> lemmas) {
+        lemmas.forEach((lemma, occurrences) -> {
+            List<Integer> found = jdbc.queryForList("SELECT id FROM lemma WHERE lemma = ?", Integer.class, lemma);
+            int lemmaId = found.isEmpty() ? jdbc.lemmaId(lemma) : found.get(0);
+            jdbc.update("UPDATE lemma SET frequency = frequency + 1 WHERE id = ?", lemmaId);
+            jdbc.update("UPDATE lemma SET frequency = frequency WHERE id = ?", lemmaId);
+            jdbc.update("INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)",
+                    pageId, lemmaId, occurrences.getCount());
+        });
+    }
+
+    /**
+     * Lemma frequencies fall off like in real texts, so pages share common lemmas and have rare ones
+     */
+    private Map<String, LemmaOccurrences> randomPage() {
+        Map<String, LemmaOccurrences> lemmas = new HashMap<>();
+        int position = 0;
+        while (lemmas.size() < lemmasPerPage) {
+            double r = random.nextDouble();
+            String lemma = "лемма" + (int) (VOCABULARY * r * r * r);
+            lemmas.computeIfAbsent(lemma, key -> new LemmaOccurrences()).add(position, position);
+            position++;
+        }
+        return lemmas;
+    }
+
+    /**
+     * Gives pages to the measured operation in turn, each round writes one page with a new id
+     */
+    private abstract static class PageSource {
+        private int nextPage;
+
+        abstract int write(int pageId, Map<String, LemmaOccurrences> lemmas);
+
+        IntSupplier over(List<Map<String, LemmaOccurrences>> pageLemmas) {
+            return () -> {
+                int pageId = ++nextPage;
+                return write(pageId, pageLemmas.get((pageId - 1) % pageLemmas.size()));
+            };
+        }
+    }
+
+    /**
+     * Counts statements sent to the server and waits a round trip for each. A JDBC batch is sent
+     * as one multi-row statement, as with rewriteBatchedStatements=true of application.yml.
+     * Lemma ids are given out by the template, as AUTO_INCREMENT would
+     */
+    private static class CountingJdbcTemplate extends JdbcTemplate {
+        private final long roundTripNanos;
+        private final Map<String, Integer> lemmaIds = new HashMap<>();
+        private long statements;
+
+        private CountingJdbcTemplate(long roundTripNanos) {
+            super(new SimpleDriverDataSource());
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            roundTrip();
+            if (sql.startsWith("INSERT INTO lemma")) {
+                for (int i = 1; i < args.length; i += 2) {
+                    lemmaId((String) args[i]);
+                }
+            }
+            return 1;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            roundTrip();
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler, Object... args) {
+            roundTrip();
+            for (int i = 1; i < args.length; i++) {
+                String lemma = (String) args[i];
+                try {
+                    handler.processRow(lemmaRow(lemma, lemmaIds.get(lemma)));
+                } catch (SQLException exception) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+        }
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            roundTrip();
+            Integer id = lemmaIds.get((String) args[0]);
+            return id == null ? Collections.emptyList() : Collections.singletonList(elementType.cast(id));
+        }
+
+        private int lemmaId(String lemma) {
+            return lemmaIds.computeIfAbsent(lemma, key -> lemmaIds.size() + 1);
+        }
+
+        private void roundTrip() {
+            statements++;
+            long until = System.nanoTime() + roundTripNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private static ResultSet lemmaRow(String lemma, int id) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, methodArgs) -> {
+                        if (method.getName().equals("getString")) {
+                            return lemma;
+                        } else if (method.getName().equals("getInt")) {
+                            return id;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LemmaOccurrencesTest {
+
+    @Test
+    public void positionsRoundTripThroughVarintGaps() {
+        LemmaOccurrences occurrences = new LemmaOccurrences();
+        int[] positions = {0, 5, 127, 128, 300, 16_384, 16_511, 2_100_000, Integer.MAX_VALUE};
+        for (int position : positions) {
+            occurrences.add(position, -1);
+        }
+        assertEquals(positions.length, occurrences.getCount());
+        assertArrayEquals(positions, LemmaOccurrences.decodePositions(occurrences.encodePositions()));
+        assertNull(occurrences.encodeTokenPositions());
+    }
+
+    @Test
+    public void smallGapsTakeOneByte() {
+        LemmaOccurrences occurrences = new LemmaOccurrences();
+        occurrences.add(10, 0);
+        occurrences.add(137, 1);
+        occurrences.add(265, 2);
+        assertArrayEquals(new byte[]{10, 127, (byte) 0x80, 1}, occurrences.encodePositions());
+        assertArrayEquals(new byte[]{0, 1, 1}, occurrences.encodeTokenPositions());
+    }
+
+    @Test
+    public void onlyFirstPositionsAreStored() {
+        LemmaOccurrences occurrences = new LemmaOccurrences();
+        occurrences.add();
+        int total = LemmaOccurrences.MAX_POSITIONS + 10;
+        for (int i = 0; i < total; i++) {
+            occurrences.add(i * 3, i);
+        }
+        assertEquals(total + 1, occurrences.getCount());
+        int[] positions = LemmaOccurrences.decodePositions(occurrences.encodePositions());
+        assertEquals(LemmaOccurrences.MAX_POSITIONS, positions.length);
+        assertEquals((LemmaOccurrences.MAX_POSITIONS - 1) * 3, positions[positions.length - 1]);
+        assertEquals(total, LemmaOccurrences.decodePositions(occurrences.encodeTokenPositions()).length);
+    }
+
+    @Test
+    public void randomTokenPositionsRoundTrip() {
+        Random random = new Random(11);
+        LemmaOccurrences occurrences = new LemmaOccurrences();
+        int[] expected = new int[1000];
+        int position = 0;
+        for (int i = 0; i < expected.length; i++) {
+            position += 1 + random.nextInt(i % 10 == 0 ? 1_000_000 : 100);
+            expected[i] = position;
+            occurrences.add(position, position);
+        }
+        assertArrayEquals(expected, LemmaOccurrences.decodePositions(occurrences.encodeTokenPositions()));
+    }
+
+    @Test
+    public void missingPositionsDecodeToEmptyArray() {
+        LemmaOccurrences occurrences = new LemmaOccurrences();
+        occurrences.add();
+        assertNull(occurrences.encodePositions());
+        assertEquals(0, LemmaOccurrences.decodePositions(null).length);
+    }
+}
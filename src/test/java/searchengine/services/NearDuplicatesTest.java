@@ -0,0 +1,70 @@
+package searchengine.services;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NearDuplicatesTest {
+    private static final String TEXT = "Поисковый движок обходит страницы сайтов, приводит слова к леммам "
+            + "и сохраняет индекс в базе данных. Поиск находит страницы со всеми словами запроса "
+            + "и упорядочивает их по релевантности, показывая сниппеты с найденными словами.";
+
+    @Test
+    public void sameTextHasSameFingerprint() {
+        assertEquals(NearDuplicates.fingerprint("Движок", TEXT), NearDuplicates.fingerprint("ДВИЖОК", TEXT + " !"));
+    }
+
+    @Test
+    public void smallEditGivesCloseFingerprint() {
+        long original = NearDuplicates.fingerprint("Движок", TEXT);
+        long edited = NearDuplicates.fingerprint("Движок", TEXT.replace("базе данных", "базе"));
+        long other = NearDuplicates.fingerprint("Рецепт", "Возьмите три яйца, стакан муки и стакан сахара, "
+                + "взбейте яйца с сахаром, добавьте муку и выпекайте бисквит сорок минут в разогретой духовке.");
+        assertTrue(NearDuplicates.distance(original, edited) < NearDuplicates.distance(original, other));
+        assertTrue(NearDuplicates.distance(original, other) > 10);
+    }
+
+    @Test
+    public void fewWordsHaveNoFingerprint() {
+        assertNull(NearDuplicates.fingerprint("Контакты", "Телефон и адрес"));
+        assertNull(NearDuplicates.fingerprint(null, null));
+    }
+
+    @Test
+    public void nearDuplicateIsFoundWithinDistance() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3);
+        long fingerprint = 0x0123_4567_89AB_CDEFL;
+        assertTrue(nearDuplicates.addIfUnique(fingerprint));
+        assertFalse(nearDuplicates.addIfUnique(fingerprint ^ 0b1011));
+        assertTrue(nearDuplicates.addIfUnique(fingerprint ^ 0b1111));
+        assertFalse(nearDuplicates.addIfUnique(fingerprint ^ (1L << 63)));
+    }
+
+    @Test
+    public void storedPageFingerprintsAreCompared() {
+        NearDuplicates nearDuplicates = new NearDuplicates(2);
+        nearDuplicates.add(-1L);
+        assertFalse(nearDuplicates.addIfUnique(-1L ^ 1L ^ (1L << 40)));
+        assertTrue(nearDuplicates.addIfUnique(0L));
+    }
+
+    @Test
+    public void negativeDistanceDisablesDetection() {
+        NearDuplicates nearDuplicates = new NearDuplicates(-1);
+        assertTrue(nearDuplicates.addIfUnique(42L));
+        assertTrue(nearDuplicates.addIfUnique(42L));
+    }
+
+    @Test
+    public void mainTextSkipsSiteBlocks() {
+        String page = "<html><body><header>Логотип</header><nav><a href='/'>Главная</a></nav>"
+                + "<div><p>Текст <b>статьи</b></p><aside>Реклама</aside></div><footer>Контакты</footer></body></html>";
+        assertEquals("Текст статьи", NearDuplicates.mainText(Jsoup.parse(page)).replaceAll("\\s+", " ").trim());
+
+        String pageWithMain = "<html><body><nav>Меню</nav><main><h1>Заголовок</h1><p>Текст</p></main>"
+                + "<div>Подвал</div></body></html>";
+        assertEquals("Заголовок Текст",
+                NearDuplicates.mainText(Jsoup.parse(pageWithMain)).replaceAll("\\s+", " ").trim());
+    }
+}
@@ -0,0 +1,155 @@
+package searchengine.services;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.JsoupConnectionSettings;
+
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pages per second of the old crawl, where CPU-sized pool threads fetch and parse each page themselves,
+ * against separate stages: fetch threads queued by {@link HostRateLimiter} hand pages to CPU workers
+ * through a bounded queue. Pages come from the local stub server answering after
+ * -Dbenchmark.latencyMillis=50. Politeness delay is left out of both, host limits allow all fetch threads
+ */
+public class PageFetcherBenchmark {
+    private final int pages = BenchmarkRunner.intProperty("pages", 100);
+    private final int latencyMillis = BenchmarkRunner.intProperty("latencyMillis", 50);
+    private final int workers = BenchmarkRunner.intProperty("workers", Runtime.getRuntime().availableProcessors());
+    private final int fetchThreads =
+            BenchmarkRunner.intProperty("fetchThreads", new CrawlerSettings().getFetchThreads());
+
+    private final PageFetcher pageFetcher = new PageFetcher(new JsoupConnectionSettings(), new CrawlerSettings());
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicInteger failedPages = new AtomicInteger();
+
+    @Test
+    public void separateStagesAgainstBlockingWorkers() throws Exception {
+        String page = page();
+        StubServer server = StubServer.start(fetchThreads);
+        server.handle("/", exchange -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            StubServer.respond(exchange, 200, "text/html; charset=UTF-8", page);
+        });
+
+        ExecutorService oldPool = Executors.newFixedThreadPool(workers);
+        ExecutorService fetchExecutor = Executors.newFixedThreadPool(fetchThreads);
+        ThreadPoolExecutor processExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(new CrawlerSettings().getProcessQueueSize()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            BenchmarkRunner.Result before = BenchmarkRunner.measure("blocking workers", 1, 1,
+                    () -> crawlInWorkers(server, oldPool));
+            HostRateLimiter hostRateLimiter = new HostRateLimiter("localhost", 0, fetchThreads, fetchExecutor, timer);
+            BenchmarkRunner.Result after = BenchmarkRunner.measure("fetch and process stages", 1, 1,
+                    () -> crawlInStages(server, hostRateLimiter, processExecutor));
+
+            System.out.printf("%d workers, %d fetch threads, %d ms server latency, %d tokens%n",
+                    workers, fetchThreads, latencyMillis, tokens.get());
+            before.print("page");
+            after.print("page");
+            assertEquals(0, failedPages.get());
+        } finally {
+            server.stop();
+            oldPool.shutdownNow();
+            fetchExecutor.shutdownNow();
+            processExecutor.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Old crawl: each worker blocks on the page request, then parses the page
+     */
+    private int crawlInWorkers(StubServer server, ExecutorService pool) {
+        CountDownLatch done = new CountDownLatch(pages);
+        for (int i = 0; i < pages; i++) {
+            String url = server.url("/page" + i);
+            pool.execute(() -> {
+                try {
+                    process(pageFetcher.fetch(url, null));
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        return await(done);
+    }
+
+    private int crawlInStages(StubServer server, HostRateLimiter hostRateLimiter, Executor processExecutor) {
+        CountDownLatch done = new CountDownLatch(pages);
+        for (int i = 0; i < pages; i++) {
+            String url = server.url("/page" + i);
+            hostRateLimiter.submit(() -> {
+                FetchedPage fetchedPage;
+                try {
+                    fetchedPage = pageFetcher.fetch(url, null);
+                } finally {
+                    hostRateLimiter.release();
+                }
+                processExecutor.execute(() -> {
+                    try {
+                        process(fetchedPage);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            });
+        }
+        return await(done);
+    }
+
+    private void process(FetchedPage fetchedPage) {
+        if (fetchedPage.getCode() != 200) {
+            failedPages.incrementAndGet();
+            return;
+        }
+        Document document = Jsoup.parse(fetchedPage.getBody(), fetchedPage.getUrl());
+        Tokenizer.tokenize(document.body().text(), (token, type, start, end) -> tokens.incrementAndGet());
+    }
+
+    private int await(CountDownLatch done) {
+        try {
+            if (!done.await(5, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Pages are not loaded in time");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+        return pages;
+    }
+
+    /**
+     * Page of about 30 KB: paragraphs of random Russian and English words and a list of links
+     */
+    private static String page() {
+        String[] words = {"поиск", "индекс", "страница", "сайт", "запрос", "лемма", "search", "engine", "page", "2023"};
+        Random random = new Random(1);
+        StringBuilder html = new StringBuilder("<html><head><title>Страница</title></head><body>");
+        for (int p = 0; p < 40; p++) {
+            html.append("<p>");
+            for (int w = 0; w < 80; w++) {
+                html.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            html.append("</p>");
+        }
+        html.append("<ul>");
+        for (int l = 0; l < 50; l++) {
+            html.append("<li><a href=\"/page").append(l).append("\">Ссылка ").append(l).append("</a></li>");
+        }
+        return html.append("</ul></body></html>").toString();
+    }
+}
@@ -0,0 +1,132 @@
+package searchengine.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.JsoupConnectionSettings;
+import searchengine.dto.PageState;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class PageFetcherTest {
+    private static final String PAGE = "<html><head><title>Page</title></head><body>Text</body></html>";
+
+    private StubServer server;
+    private PageFetcher pageFetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        server = StubServer.start(0);
+        server.handle("/page", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                StubServer.respond(exchange, 304, null, null);
+            } else {
+                StubServer.respond(exchange, 200, "text/html; charset=UTF-8", PAGE);
+            }
+        });
+        server.handle("/missing", exchange -> StubServer.respond(exchange, 404, "text/html", "Not found"));
+        server.handle("/busy", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "7");
+            StubServer.respond(exchange, 503, "text/html", "Busy");
+        });
+        pageFetcher = new PageFetcher(new JsoupConnectionSettings(), new CrawlerSettings());
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void loadsPageBodyAndValidators() {
+        FetchedPage page = pageFetcher.fetch(server.url("/page"), null);
+        assertEquals(200, page.getCode());
+        assertEquals(PAGE, page.getBody());
+        assertEquals("\"v1\"", page.getEtag());
+        assertFalse(page.isThrottled());
+    }
+
+    @Test
+    public void errorPageKeepsCodeWithoutBody() {
+        FetchedPage page = pageFetcher.fetch(server.url("/missing"), null);
+        assertEquals(404, page.getCode());
+        assertNull(page.getBody());
+        assertTrue(page.isGone());
+    }
+
+    @Test
+    public void throttledPageGivesRetryAfter() {
+        FetchedPage page = pageFetcher.fetch(server.url("/busy"), null);
+        assertTrue(page.isThrottled());
+        assertEquals(7000, page.getRetryAfterMillis());
+    }
+
+    @Test
+    public void unchangedPageAnswersNotModified() {
+        FetchedPage page = pageFetcher.fetch(server.url("/page"), knownPage("\"v1\""));
+        assertTrue(page.isNotModified());
+        assertNull(page.getBody());
+    }
+
+    @Test
+    public void textResourceHasItsOwnSizeLimit() {
+        String sitemap = "<urlset>" + "<url><loc>https://site.ru/page</loc></url>".repeat(100) + "</urlset>";
+        server.handle("/sitemap.xml", exchange -> StubServer.respond(exchange, 200, "application/xml", sitemap));
+        server.handle("/large", exchange -> StubServer.respond(exchange, 200, "text/html", sitemap));
+        CrawlerSettings settings = new CrawlerSettings();
+        settings.setMaxBodySize(1024);
+        PageFetcher limitedFetcher = new PageFetcher(new JsoupConnectionSettings(), settings);
+
+        assertEquals(sitemap, limitedFetcher.fetch(server.url("/sitemap.xml")).getBody());
+        FetchedPage page = limitedFetcher.fetch(server.url("/large"), null);
+        assertEquals(200, page.getCode());
+        assertNull(page.getBody());
+    }
+
+    @Test
+    public void unreachableHostGivesCodeZero() {
+        String url = server.url("/page");
+        server.stop();
+        FetchedPage page = pageFetcher.fetch(url, null);
+        assertEquals(0, page.getCode());
+        assertNull(page.getBody());
+    }
+
+    private static PageState knownPage(String etag) {
+        return new PageState() {
+            @Override
+            public int getId() {
+                return 1;
+            }
+
+            @Override
+            public String getPath() {
+                return "/page";
+            }
+
+            @Override
+            public String getEtag() {
+                return etag;
+            }
+
+            @Override
+            public String getLastModified() {
+                return null;
+            }
+
+            @Override
+            public String getContentHash() {
+                return null;
+            }
+
+            @Override
+            public Long getSimHash() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Queries per second of the removed N×M search, one findByLemmaIdAndPageId per candidate page and lemma,
+ * against {@link PageMatches} over posting lists read in bulk. Synthetic index of one site has
+ * -Dbenchmark.rows=1000000 index rows, lemma frequencies follow Zipf's law. Old lookups are binary searches
+ * in memory standing for the primary key lookups of MySQL, so they only count round trips; time of
+ * the round trips is added to the old result at -Dbenchmark.roundTripMicros=200
+ */
+public class PageMatchesBenchmark {
+    private static final int QUERY_LEMMAS = 3;
+    private static final int COMMON_LEMMAS = 20;
+
+    private final int rows = BenchmarkRunner.intProperty("rows", 1_000_000);
+    private final int pages = BenchmarkRunner.intProperty("pages", 100_000);
+    private final int vocabulary = BenchmarkRunner.intProperty("vocabulary", 20_000);
+    private final int queries = BenchmarkRunner.intProperty("queries", 200);
+    private final int roundTripMicros = BenchmarkRunner.intProperty("roundTripMicros", 200);
+    private final Random random = new Random(1);
+
+    private long roundTrips;
+    private double oldRelevance;
+    private double newRelevance;
+
+    @Test
+    public void intersectionAgainstPerPageLookups() {
+        PostingList[] index = index();
+        long indexRows = Arrays.stream(index).mapToLong(PostingList::size).sum();
+
+        // Query words are common lemmas, so queries have thousands of candidate pages
+        List<List<PostingList>> queryLists = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            List<PostingList> lists = new ArrayList<>();
+            for (int l = 0; l < QUERY_LEMMAS; l++) {
+                lists.add(index[random.nextInt(Math.min(COMMON_LEMMAS, vocabulary))]);
+            }
+            queryLists.add(lists);
+        }
+
+        int[] oldMatches = new int[1];
+        BenchmarkRunner.Result before = BenchmarkRunner.measure("per-page lookups", 1, 3, () -> {
+            roundTrips = 0;
+            oldRelevance = 0;
+            oldMatches[0] = 0;
+            for (List<PostingList> lists : queryLists) {
+                oldMatches[0] += perPageLookups(lists);
+            }
+            return queryLists.size();
+        });
+        int[] newMatches = new int[1];
+        BenchmarkRunner.Result after = BenchmarkRunner.measure("posting list intersection", 1, 3, () -> {
+            newRelevance = 0;
+            newMatches[0] = 0;
+            for (List<PostingList> lists : queryLists) {
+                int[] documentFrequencies = lists.stream().mapToInt(PostingList::size).toArray();
+                PageMatches matches = PageMatches.intersect(lists);
+                matches.score(new RankSumScorer(), documentFrequencies, null, null);
+                for (int i = 0; i < matches.getSize(); i++) {
+                    newRelevance += matches.getRelevance()[i];
+                }
+                newMatches[0] += matches.getSize();
+            }
+            return queryLists.size();
+        });
+        assertEquals(oldMatches[0], newMatches[0]);
+        assertEquals(oldRelevance, newRelevance, 1e-6 * oldRelevance);
+
+        double roundTripsPerQuery = (double) roundTrips / queries;
+        double oldSeconds = before.nanos / 1e9 + roundTrips * roundTripMicros / 1e6;
+        System.out.printf("%d index rows, %d pages, %d matches per query%n",
+                indexRows, pages, oldMatches[0] / queries);
+        before.print("query");
+        after.print("query");
+        System.out.printf("round trips per query: %.0f before, 1 after (bulk read, none with index in memory)%n",
+                roundTripsPerQuery);
+        System.out.printf("with %d us per round trip: %.2f queries/s before%n", roundTripMicros, queries / oldSeconds);
+    }
+
+    /**
+     * Removed SearchServiceImpl.search: postings of the most frequent lemma, then a lookup of each remaining
+     * lemma on each candidate page, then a lookup of every lemma on every found page for its rank
+     */
+    private int perPageLookups(List<PostingList> queryLists) {
+        List<PostingList> lists = new ArrayList<>(queryLists);
+        lists.sort(Comparator.comparingInt(PostingList::size).reversed());
+        roundTrips++;
+        List<Integer> candidates = new ArrayList<>();
+        for (int pageId : lists.get(0).getPageIds()) {
+            candidates.add(pageId);
+        }
+
+        for (int l = 1; l < lists.size(); l++) {
+            PostingList list = lists.get(l);
+            candidates.removeIf(pageId -> lookUp(list, pageId) < 0);
+        }
+
+        for (int pageId : candidates) {
+            for (PostingList list : lists) {
+                oldRelevance += list.getRanks()[lookUp(list, pageId)];
+            }
+        }
+        return candidates.size();
+    }
+
+    private int lookUp(PostingList list, int pageId) {
+        roundTrips++;
+        return Arrays.binarySearch(list.getPageIds(), pageId);
+    }
+
+    /**
+     * Posting list of each lemma, lemma i is found on a share of pages proportional to 1 / (i + 1).
+     * Page ids are drawn with geometric gaps, so each list is built in time of its size
+     */
+    private PostingList[] index() {
+        double harmonic = 0;
+        for (int i = 1; i <= vocabulary; i++) {
+            harmonic += 1.0 / i;
+        }
+
+        PostingList[] index = new PostingList[vocabulary];
+        for (int lemma = 0; lemma < vocabulary; lemma++) {
+            double share = Math.min(1.0, rows / harmonic / (lemma + 1) / pages);
+            PostingList.Builder builder = new PostingList.Builder();
+            int pageId = 0;
+            while (true) {
+                pageId += share >= 1.0 ? 1 : 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - share));
+                if (pageId > pages) {
+                    break;
+                }
+                builder.add(pageId, 1 + random.nextInt(20));
+            }
+            index[lemma] = builder.build();
+        }
+        return index;
+    }
+}
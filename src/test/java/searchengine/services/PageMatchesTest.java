@@ -0,0 +1,87 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class PageMatchesTest {
+
+    @Test
+    public void intersectKeepsRanksInOrderOfGivenLists() {
+        PostingList common = list(new int[]{1, 2, 3, 4, 5, 6, 7, 8}, 1f);
+        PostingList rare = list(new int[]{2, 6, 9}, 2f);
+        PageMatches matches = PageMatches.intersect(List.of(common, rare));
+
+        assertEquals(2, matches.getSize());
+        assertArrayEquals(new int[]{2, 6}, Arrays.copyOf(matches.getPageIds(), 2));
+        assertEquals(2f, matches.getRanks()[0][0], 0f);
+        assertEquals(4f, matches.getRanks()[1][0], 0f);
+        assertEquals(12f, matches.getRanks()[1][1], 0f);
+    }
+
+    @Test
+    public void intersectOfDisjointOrEmptyListsIsEmpty() {
+        assertEquals(0, PageMatches.intersect(List.of()).getSize());
+        assertEquals(0, PageMatches.intersect(List.of(list(new int[]{1, 3}, 1f), list(new int[]{2, 4}, 1f))).getSize());
+        assertEquals(0, PageMatches.intersect(List.of(list(new int[]{1, 3}, 1f), PostingList.EMPTY)).getSize());
+    }
+
+    @Test
+    public void intersectMatchesNaiveIntersection() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int lists = 1 + random.nextInt(4);
+            List<PostingList> postingLists = new ArrayList<>();
+            TreeSet<Integer> expected = null;
+            for (int l = 0; l < lists; l++) {
+                TreeSet<Integer> ids = new TreeSet<>();
+                int size = random.nextInt(2000);
+                int range = 1 + random.nextInt(5000);
+                for (int i = 0; i < size; i++) {
+                    ids.add(random.nextInt(range));
+                }
+                postingLists.add(list(ids.stream().mapToInt(Integer::intValue).toArray(), 1f));
+                if (expected == null) {
+                    expected = ids;
+                } else {
+                    expected.retainAll(ids);
+                }
+            }
+
+            PageMatches matches = PageMatches.intersect(postingLists);
+            assertEquals(expected.size(), matches.getSize());
+            int i = 0;
+            for (int pageId : expected) {
+                assertEquals(pageId, matches.getPageIds()[i++]);
+            }
+        }
+    }
+
+    @Test
+    public void concatJoinsPagesAndRelevanceOfSites() {
+        PageMatches first = new PageMatches(new int[]{1, 2, 0}, null, new double[]{0.5, 1.5, 0}, 2);
+        PageMatches second = new PageMatches(new int[]{10}, null, new double[]{3}, 1);
+        PageMatches joined = PageMatches.concat(List.of(first, second));
+
+        assertEquals(3, joined.getSize());
+        assertArrayEquals(new int[]{1, 2, 10}, joined.getPageIds());
+        assertEquals(3, joined.maxRelevance(), 0);
+    }
+
+    /**
+     * Rank of each page is its id times the factor
+     */
+    private static PostingList list(int[] pageIds, float factor) {
+        float[] ranks = new float[pageIds.length];
+        for (int i = 0; i < pageIds.length; i++) {
+            ranks[i] = pageIds[i] * factor;
+        }
+        return new PostingList(pageIds, ranks);
+    }
+}
@@ -0,0 +1,45 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PostingListTest {
+
+    @Test
+    public void builderKeepsRowsReadInPageOrder() {
+        PostingList.Builder builder = new PostingList.Builder();
+        builder.add(1, 1f);
+        builder.add(5, 2f);
+        builder.add(9, 3f);
+        PostingList list = builder.build();
+        assertArrayEquals(new int[]{1, 5, 9}, list.getPageIds());
+        assertArrayEquals(new float[]{1f, 2f, 3f}, list.getRanks(), 0f);
+    }
+
+    @Test
+    public void builderSortsRowsKeepingRanksPaired() {
+        PostingList.Builder builder = new PostingList.Builder();
+        int[] ids = {40, 3, 17, 25, 1};
+        for (int id : ids) {
+            builder.add(id, id / 10f);
+        }
+        PostingList list = builder.build();
+        assertArrayEquals(new int[]{1, 3, 17, 25, 40}, list.getPageIds());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(list.getPageIds()[i] / 10f, list.getRanks()[i], 0f);
+        }
+    }
+
+    @Test
+    public void builderGrowsPastInitialCapacity() {
+        PostingList.Builder builder = new PostingList.Builder();
+        for (int i = 1000; i > 0; i--) {
+            builder.add(i, i);
+        }
+        PostingList list = builder.build();
+        assertEquals(1000, list.size());
+        assertEquals(1, list.getPageIds()[0]);
+        assertEquals(1000f, list.getRanks()[999], 0f);
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RobotsRulesTest {
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; SearchEngineBot/1.0)";
+
+    @Test
+    public void wildcardMatchesAnyChars() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /*/print\nDisallow: /search*q=", USER_AGENT);
+        assertFalse(rules.isAllowed("https://site.ru/news/print"));
+        assertFalse(rules.isAllowed("https://site.ru/news/2023/print/page"));
+        assertFalse(rules.isAllowed("https://site.ru/search?page=2&q=java"));
+        assertTrue(rules.isAllowed("https://site.ru/news/post"));
+        assertTrue(rules.isAllowed("https://site.ru/search?page=2"));
+    }
+
+    @Test
+    public void dollarAnchorsEndOfPath() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /*.pdf$\nDisallow: /tmp$", USER_AGENT);
+        assertFalse(rules.isAllowed("https://site.ru/docs/report.pdf"));
+        assertTrue(rules.isAllowed("https://site.ru/docs/report.pdf?download=1"));
+        assertFalse(rules.isAllowed("https://site.ru/tmp"));
+        assertTrue(rules.isAllowed("https://site.ru/tmp/file"));
+    }
+
+    @Test
+    public void longestRuleWinsAndAllowWinsTie() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\n"
+                + "Disallow: /shop\n"
+                + "Allow: /shop/catalog\n"
+                + "Disallow: /page\n"
+                + "Allow: /page\n", USER_AGENT);
+        assertFalse(rules.isAllowed("https://site.ru/shop/cart"));
+        assertTrue(rules.isAllowed("https://site.ru/shop/catalog/1"));
+        assertTrue(rules.isAllowed("https://site.ru/page/1"));
+        assertTrue(rules.isAllowed("https://site.ru/"));
+    }
+
+    @Test
+    public void ownAgentGroupReplacesCommonGroup() {
+        String robotsTxt = "User-agent: *\n"
+                + "Disallow: /\n"
+                + "\n"
+                + "User-agent: OtherBot\n"
+                + "User-agent: searchenginebot\n"
+                + "Disallow: /private # our group\n"
+                + "Crawl-delay: 1.5\n"
+                + "\n"
+                + "Sitemap: https://site.ru/sitemap.xml\n";
+        RobotsRules rules = RobotsRules.parse(robotsTxt, USER_AGENT);
+        assertTrue(rules.isAllowed("https://site.ru/news"));
+        assertFalse(rules.isAllowed("https://site.ru/private/1"));
+        assertEquals(1500, rules.getCrawlDelayMillis());
+        assertEquals(List.of("https://site.ru/sitemap.xml"), rules.getSitemaps());
+
+        RobotsRules otherRules = RobotsRules.parse(robotsTxt, "Mozilla/5.0 (compatible; AnotherCrawler)");
+        assertFalse(otherRules.isAllowed("https://site.ru/news"));
+        assertEquals(-1, otherRules.getCrawlDelayMillis());
+    }
+
+    @Test
+    public void emptyDisallowAllowsEverything() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow:\n", USER_AGENT);
+        assertTrue(rules.isAllowed("https://site.ru/any/page"));
+        assertTrue(RobotsRules.ALLOW_ALL.isAllowed("https://site.ru/any/page"));
+    }
+}
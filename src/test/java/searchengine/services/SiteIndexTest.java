@@ -0,0 +1,53 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SiteIndexTest {
+
+    @Test
+    public void readSkipsDeletedPages() {
+        SiteIndex siteIndex = new SiteIndex(1);
+        for (int pageId = 1; pageId <= 5; pageId++) {
+            siteIndex.addPage(pageId, 10, Map.of(100, (float) pageId));
+        }
+        siteIndex.removePage(4);
+        siteIndex.removePage(2);
+        siteIndex.removePage(4);
+
+        assertArrayEquals(new int[]{1, 3, 5}, siteIndex.read(100).getPageIds());
+        assertArrayEquals(new int[]{2, 4}, siteIndex.getDeletedPages());
+        assertEquals(0, siteIndex.read(200).size());
+    }
+
+    @Test
+    public void frozenPagesStaySearchableUntilUnfrozen() {
+        SiteIndex siteIndex = new SiteIndex(1);
+        siteIndex.addPage(1, 10, Map.of(100, 1f));
+        assertNotNull(siteIndex.freeze());
+        siteIndex.addPage(2, 20, Map.of(100, 2f));
+        assertArrayEquals(new int[]{1, 2}, siteIndex.read(100).getPageIds());
+
+        siteIndex.unfreeze();
+        assertArrayEquals(new int[]{1, 2}, siteIndex.read(100).getPageIds());
+        assertArrayEquals(new int[]{10, 20, 0}, siteIndex.getPageLengths(new int[]{1, 2, 3}, 3));
+    }
+
+    @Test
+    public void statisticsSkipEmptyAndDeletedPages() {
+        SiteIndex siteIndex = new SiteIndex(1);
+        siteIndex.addPage(1, 10, Map.of(100, 1f));
+        siteIndex.addPage(2, 30, Map.of(100, 2f));
+        siteIndex.addPageLength(3, 0);
+        siteIndex.addPageLength(2, 30);
+        assertEquals(2, siteIndex.getStatistics().getPageCount());
+        assertEquals(20, siteIndex.getStatistics().getAveragePageLength(), 0);
+
+        siteIndex.removePage(1);
+        assertEquals(1, siteIndex.getStatistics().getPageCount());
+        assertEquals(30, siteIndex.getStatistics().getAveragePageLength(), 0);
+    }
+}
@@ -0,0 +1,62 @@
+package searchengine.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server of fetcher tests and benchmarks, answering on a free port of localhost
+ */
+final class StubServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private StubServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * @param threads number of requests served at once, 0 serves them one by one in the server thread
+     */
+    static StubServer start(int threads) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+        server.setExecutor(executor);
+        server.start();
+        return new StubServer(server, executor);
+    }
+
+    void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    void stop() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+        }
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, body == null ? -1 : bytes.length);
+        if (body != null) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
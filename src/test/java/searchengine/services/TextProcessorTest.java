@@ -0,0 +1,24 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextProcessorTest {
+
+    @Test
+    public void partOfSpeechIsTheTokenAfterMorphCode() {
+        assertEquals("ПРЕДЛ", TextProcessor.getPartOfSpeech("в|l ПРЕДЛ"));
+        assertEquals("С", TextProcessor.getPartOfSpeech("дом|A С мр,ед,им"));
+        assertEquals("VERB", TextProcessor.getPartOfSpeech("run|W VERB inf"));
+        assertEquals("INT", TextProcessor.getPartOfSpeech("oh|a INT"));
+    }
+
+    @Test
+    public void grammemesAreNotTakenForPartOfSpeech() {
+        // Substring match took such words for interjections and particles
+        assertEquals("NOUN", TextProcessor.getPartOfSpeech("interval|b NOUN INTERVAL"));
+        assertEquals("VERB", TextProcessor.getPartOfSpeech("part|c VERB PARTICIPLE"));
+        assertEquals("", TextProcessor.getPartOfSpeech("word|a"));
+    }
+}
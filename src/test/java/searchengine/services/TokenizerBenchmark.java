@@ -0,0 +1,106 @@
+package searchengine.services;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tokens per second and bytes allocated per token of the old regex chain of TextProcessor, run over
+ * the serialized page, against {@link Tokenizer} over the text of the parsed page.
+ * Saved pages are read from the directory given by -Dbenchmark.pages=&lt;dir&gt;,
+ * without it the page template of the project is used
+ */
+public class TokenizerBenchmark {
+    private static final Path DEFAULT_PAGE = Paths.get("src/main/resources/templates/index.html");
+
+    private final int rounds = BenchmarkRunner.intProperty("rounds", 200);
+    private int cyrillicWords;
+
+    @Test
+    public void tokenizerAgainstRegexChain() {
+        List<Document> documents = readPages();
+        assertFalse(documents.isEmpty());
+
+        BenchmarkRunner.Result before = BenchmarkRunner.measure("regex chain", rounds / 10, rounds, () -> {
+            int tokens = 0;
+            for (Document document : documents) {
+                tokens += regexChain(document.toString());
+            }
+            return tokens;
+        });
+        BenchmarkRunner.Result after = BenchmarkRunner.measure("tokenizer", rounds / 10, rounds, () -> {
+            int[] tokens = new int[1];
+            for (Document document : documents) {
+                Tokenizer.tokenize(document.body().text(), (token, type, start, end) -> {
+                    if (type == Tokenizer.TokenType.CYRILLIC) {
+                        cyrillicWords++;
+                    }
+                    tokens[0]++;
+                });
+            }
+            return tokens[0];
+        });
+
+        // Old chain also counts words of the title and of markup left by the regexes
+        System.out.printf("%d pages, tokens per round: %d before, %d after%n",
+                documents.size(), before.items / rounds, after.items / rounds);
+        before.print("token");
+        after.print("token");
+    }
+
+    /**
+     * Removed TextProcessor.prepareText with the checks of each word made by getLemma
+     */
+    private int regexChain(String html) {
+        String text = html.toLowerCase(Locale.ROOT)
+                .replaceAll("<script.*?</script>", " ")
+                .replaceAll("<[^>]*>", " ")
+                .replaceAll("([^а-яa-z\\d])", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+        String[] words = text.split(" ");
+        for (String word : words) {
+            if (word.matches("[а-я]+")) {
+                cyrillicWords++;
+            } else if (!word.matches(".*[a-z]+.*")) {
+                Pattern.compile(".*\\d+.*").matcher(word).matches();
+            }
+        }
+        return words.length;
+    }
+
+    private static List<Document> readPages() {
+        String directory = System.getProperty("benchmark.pages");
+        try {
+            if (directory == null) {
+                return List.of(Jsoup.parse(Files.readString(DEFAULT_PAGE, StandardCharsets.UTF_8)));
+            }
+            try (Stream<Path> files = Files.list(Paths.get(directory))) {
+                List<Path> pages = files.filter(file -> file.toString().endsWith(".html"))
+                        .collect(Collectors.toList());
+                List<Document> documents = new ArrayList<>();
+                for (Path page : pages) {
+                    documents.add(Jsoup.parse(Files.readString(page, StandardCharsets.UTF_8)));
+                }
+                return documents;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TokenizerTest {
+
+    @Test
+    public void splitsLowerCasedWordsWithTypes() {
+        List<String> tokens = tokenize("Привет, World! 2024 год iPhone15");
+        assertEquals(List.of("привет CYRILLIC 0-6", "world LATIN 8-13", "2024 NUMERIC 15-19",
+                "год CYRILLIC 20-23", "iphone15 MIXED 24-32"), tokens);
+    }
+
+    @Test
+    public void replacesYoWithYe() {
+        assertEquals(List.of("еж CYRILLIC 0-2", "елка CYRILLIC 3-7"), tokenize("Ёж ёлка"));
+    }
+
+    @Test
+    public void treatsPunctuationAndOtherScriptsAsSeparators() {
+        assertEquals(List.of("e LATIN 0-1", "mail LATIN 2-6", "naive LATIN 7-12", "ber LATIN 14-17"),
+                tokenize("e-mail naive—über"));
+    }
+
+    @Test
+    public void skipsTooLongTokensWhole() {
+        String longToken = "a".repeat(Tokenizer.MAX_TOKEN_LENGTH + 1);
+        String exactToken = "b".repeat(Tokenizer.MAX_TOKEN_LENGTH);
+        List<String> tokens = tokenize("x " + longToken + " " + exactToken);
+        assertEquals(2, tokens.size());
+        assertEquals("x LATIN 0-1", tokens.get(0));
+        assertTrue(tokens.get(1).startsWith(exactToken + " LATIN"));
+    }
+
+    @Test
+    public void emptyAndSeparatorOnlyTextGiveNoTokens() {
+        assertTrue(tokenize("").isEmpty());
+        assertTrue(tokenize(" ,.!? \n\t").isEmpty());
+    }
+
+    @Test
+    public void wordCharsAreLettersAndDigits() {
+        assertTrue(Tokenizer.isWordChar('Я'));
+        assertTrue(Tokenizer.isWordChar('Q'));
+        assertTrue(Tokenizer.isWordChar('7'));
+        assertFalse(Tokenizer.isWordChar('-'));
+        assertFalse(Tokenizer.isWordChar('ü'));
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Tokenizer.tokenize(text, (token, type, start, end) -> tokens.add(token + " " + type + " " + start + "-" + end));
+        return tokens;
+    }
+}
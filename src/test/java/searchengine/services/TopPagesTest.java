@@ -0,0 +1,89 @@
+package searchengine.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TopPagesTest {
+
+    @Test
+    public void keepsBestPagesFromBestToWorst() {
+        TopPages topPages = new TopPages(3);
+        topPages.offer(1, 0.5);
+        topPages.offer(2, 2.0);
+        topPages.offer(3, 0.1);
+        topPages.offer(4, 1.0);
+        topPages.offer(5, 3.0);
+        topPages.sortDescending();
+
+        assertEquals(3, topPages.size());
+        assertEquals(5, topPages.getPageId(0));
+        assertEquals(2, topPages.getPageId(1));
+        assertEquals(4, topPages.getPageId(2));
+        assertEquals(3.0, topPages.getScore(0), 0);
+        assertEquals(1.0, topPages.getScore(2), 0);
+    }
+
+    @Test
+    public void equalScoresAreOrderedByPageId() {
+        TopPages topPages = new TopPages(2);
+        topPages.offer(7, 1.0);
+        topPages.offer(3, 1.0);
+        topPages.offer(5, 1.0);
+        topPages.offer(9, 1.0);
+        topPages.sortDescending();
+
+        assertEquals(2, topPages.size());
+        assertEquals(3, topPages.getPageId(0));
+        assertEquals(5, topPages.getPageId(1));
+    }
+
+    @Test
+    public void keepsFewerPagesThanCapacity() {
+        TopPages topPages = new TopPages(10);
+        topPages.offer(1, 1.0);
+        topPages.offer(2, 2.0);
+        topPages.sortDescending();
+        assertEquals(2, topPages.size());
+        assertEquals(2, topPages.getPageId(0));
+
+        TopPages none = new TopPages(0);
+        none.offer(1, 1.0);
+        none.sortDescending();
+        assertEquals(0, none.size());
+    }
+
+    @Test
+    public void offerAllMatchesFullSort() {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            int size = random.nextInt(200);
+            int[] pageIds = new int[size];
+            double[] relevance = new double[size];
+            List<int[]> expected = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                pageIds[i] = i + 1;
+                // Few distinct scores to check ties
+                relevance[i] = random.nextInt(20);
+                expected.add(new int[]{pageIds[i], (int) relevance[i]});
+            }
+            expected.sort(Comparator.<int[]>comparingInt(page -> -page[1]).thenComparingInt(page -> page[0]));
+
+            int capacity = random.nextInt(30);
+            TopPages topPages = new TopPages(capacity);
+            topPages.offerAll(new PageMatches(pageIds, null, relevance, size));
+            topPages.sortDescending();
+
+            assertEquals(Math.min(capacity, size), topPages.size());
+            for (int i = 0; i < topPages.size(); i++) {
+                assertEquals(expected.get(i)[0], topPages.getPageId(i));
+                assertEquals(expected.get(i)[1], topPages.getScore(i), 0);
+            }
+        }
+    }
+}
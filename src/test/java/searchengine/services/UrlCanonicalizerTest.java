@@ -0,0 +1,56 @@
+package searchengine.services;
+
+import org.junit.Test;
+import searchengine.config.CrawlerSettings;
+
+import static org.junit.Assert.*;
+
+public class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(new CrawlerSettings());
+
+    @Test
+    public void dropsDefaultPortAndLowersSchemeAndHost() {
+        assertEquals("http://site.ru/Path", canonicalizer.canonicalize("HTTP://Site.RU:80/Path"));
+        assertEquals("https://site.ru/", canonicalizer.canonicalize("https://site.ru:443/"));
+        assertEquals("https://site.ru:8443/", canonicalizer.canonicalize("https://site.ru:8443/"));
+        assertEquals("http://site.ru:443/", canonicalizer.canonicalize("http://site.ru:443/"));
+    }
+
+    @Test
+    public void removesDotSegmentsAndFragment() {
+        assertEquals("https://site.ru/b/c", canonicalizer.canonicalize("https://site.ru/a/../b/./c#part"));
+        assertEquals("https://site.ru/a/", canonicalizer.canonicalize(" https://site.ru/a/./ "));
+    }
+
+    @Test
+    public void dropsTrackingParametersAndSortsOthers() {
+        assertEquals("https://site.ru/list?page=2&sort=name",
+                canonicalizer.canonicalize("https://site.ru/list?utm_source=mail&sort=name&UTM_Medium=x&page=2"));
+        assertEquals("https://site.ru/list", canonicalizer.canonicalize("https://site.ru/list?gclid=1&utm_campaign=a"));
+        assertEquals("https://site.ru/list?a=2&a=1&b=0", canonicalizer.canonicalize("https://site.ru/list?b=0&a=2&a=1"));
+    }
+
+    @Test
+    public void keepsParameterOrderWhenSortingIsOff() {
+        CrawlerSettings settings = new CrawlerSettings();
+        settings.getDuplicates().setSortQueryParameters(false);
+        UrlCanonicalizer unsorted = new UrlCanonicalizer(settings);
+        assertEquals("https://site.ru/?b=1&a=2", unsorted.canonicalize("https://site.ru/?b=1&utm_term=x&a=2"));
+    }
+
+    @Test
+    public void visitedUrlFormAgreesOnOrigin() {
+        String[] urls = {"HTTPS://Site.RU:443/a/../b/", "http://site.ru:80/b?x=1", "https://site.ru:8443/./b#top"};
+        for (String url : urls) {
+            assertEquals(VisitedUrls.normalize(url), VisitedUrls.normalize(canonicalizer.canonicalize(url)));
+        }
+        assertEquals("https://site.ru/b", VisitedUrls.normalize(urls[0]));
+        assertEquals("https://site.ru:8443/b", VisitedUrls.normalize(urls[2]));
+    }
+
+    @Test
+    public void unparsableOrRelativeUrlIsKeptAsIs() {
+        assertEquals("https://site.ru/a b", canonicalizer.canonicalize("https://site.ru/a b"));
+        assertEquals("/relative/path", canonicalizer.canonicalize("/relative/path"));
+    }
+}
@@ -0,0 +1,120 @@
+package searchengine.services;
+
+import org.junit.Test;
+import searchengine.config.CrawlerSettings;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Claims per second of {@link VisitedUrls} against the old synchronized list of the crawl, which checked
+ * every link with contains and then added it. Crawl workers claim links found on pages concurrently,
+ * each page is linked twice. The list is linear in the number of urls, so it gets a smaller site
+ */
+public class VisitedUrlsBenchmark {
+    private final int threads = BenchmarkRunner.intProperty("threads", 8);
+    private final int urls = BenchmarkRunner.intProperty("urls", 200_000);
+    private final int listUrls = BenchmarkRunner.intProperty("listUrls", 10_000);
+
+    @Test
+    public void visitedUrlsAgainstSynchronizedList() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            String[] siteLinks = links(urls);
+            String[] smallSiteLinks = links(listUrls);
+
+            BenchmarkRunner.Result list = BenchmarkRunner.measure("synchronized list", 1, 3, () -> {
+                List<String> controlList = Collections.synchronizedList(new ArrayList<>());
+                claimAll(executor, smallSiteLinks, url -> {
+                    if (controlList.contains(url)) {
+                        return false;
+                    }
+                    controlList.add(url);
+                    return true;
+                });
+                return smallSiteLinks.length;
+            });
+            BenchmarkRunner.Result smallSet = measure("visited set, list size", executor, smallSiteLinks, false);
+            BenchmarkRunner.Result set = measure("visited set", executor, siteLinks, false);
+            BenchmarkRunner.Result bloom = measure("visited Bloom filter", executor, siteLinks, true);
+
+            System.out.printf("%d threads, %d urls (%d for the list), claims counted over all threads%n",
+                    threads, urls, listUrls);
+            list.print("claim");
+            smallSet.print("claim");
+            set.print("claim");
+            bloom.print("claim");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private BenchmarkRunner.Result measure(String name, ExecutorService executor, String[] links,
+                                           boolean bloomFilter) {
+        CrawlerSettings.VisitedUrls settings = new CrawlerSettings.VisitedUrls();
+        settings.setBloomFilter(bloomFilter);
+        settings.setExpectedUrls(links.length);
+        return BenchmarkRunner.measure(name, 1, 3, () -> {
+            VisitedUrls visitedUrls = new VisitedUrls(settings);
+            int claimed = claimAll(executor, links, visitedUrls::claim);
+            if (!bloomFilter) {
+                assertEquals(links.length / 2, claimed);
+            }
+            return links.length;
+        });
+    }
+
+    /**
+     * Splits links between the threads and returns number of successful claims
+     */
+    private int claimAll(ExecutorService executor, String[] links, Predicate<String> claim) {
+        List<Callable<Integer>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers.add(() -> {
+                int claimed = 0;
+                for (int i = first; i < links.length; i += threads) {
+                    if (claim.test(links[i])) {
+                        claimed++;
+                    }
+                }
+                return claimed;
+            });
+        }
+
+        int claimed = 0;
+        try {
+            for (Future<Integer> worker : executor.invokeAll(workers)) {
+                claimed += worker.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException(exception.getCause());
+        }
+        return claimed;
+    }
+
+    /**
+     * Links of a site with the given number of pages in random order, each page is linked with
+     * and without trailing slash
+     */
+    private static String[] links(int pages) {
+        List<String> links = new ArrayList<>(pages * 2);
+        for (int i = 0; i < pages; i++) {
+            String url = "https://site.ru/catalog/section" + i / 100 + "/item" + i;
+            links.add(url);
+            links.add(url + "/");
+        }
+        Collections.shuffle(links, new Random(1));
+        return links.toArray(new String[0]);
+    }
+}
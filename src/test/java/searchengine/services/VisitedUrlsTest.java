@@ -0,0 +1,80 @@
+package searchengine.services;
+
+import org.junit.Test;
+import searchengine.config.CrawlerSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VisitedUrlsTest {
+
+    @Test
+    public void normalizeUnifiesCaseDefaultPortFragmentAndTrailingSlash() {
+        String expected = "https://example.com/catalog/item?id=1";
+        assertEquals(expected, VisitedUrls.normalize("HTTPS://Example.COM:443/catalog/item/?id=1#reviews"));
+        assertEquals(expected, VisitedUrls.normalize(" https://example.com/catalog/item?id=1 "));
+        assertEquals("http://example.com:8080/a", VisitedUrls.normalize("http://example.com:8080/a/"));
+        assertEquals("https://example.com", VisitedUrls.normalize("https://example.com/"));
+    }
+
+    @Test
+    public void normalizeKeepsUnparsableUrls() {
+        assertEquals("not a url", VisitedUrls.normalize(" not a url "));
+        assertEquals("/relative/path", VisitedUrls.normalize("/relative/path"));
+    }
+
+    @Test
+    public void claimTakesEachNormalizedUrlOnce() {
+        for (boolean bloomFilter : new boolean[]{false, true}) {
+            VisitedUrls visitedUrls = new VisitedUrls(settings(bloomFilter));
+            assertTrue(visitedUrls.claim("https://example.com/a"));
+            assertFalse(visitedUrls.claim("https://EXAMPLE.com/a/"));
+            assertFalse(visitedUrls.claim("https://example.com/a#top"));
+            assertTrue(visitedUrls.claim("https://example.com/b"));
+        }
+    }
+
+    @Test
+    public void concurrentClaimsGiveEachUrlToOneWorker() throws Exception {
+        for (boolean bloomFilter : new boolean[]{false, true}) {
+            VisitedUrls visitedUrls = new VisitedUrls(settings(bloomFilter));
+            AtomicInteger claimed = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        if (visitedUrls.claim("https://example.com/page/" + i)) {
+                            claimed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            if (bloomFilter) {
+                assertTrue("claimed " + claimed, claimed.get() <= 5_000 && claimed.get() > 4_990);
+            } else {
+                assertEquals(5_000, claimed.get());
+            }
+        }
+    }
+
+    private static CrawlerSettings.VisitedUrls settings(boolean bloomFilter) {
+        CrawlerSettings.VisitedUrls settings = new CrawlerSettings.VisitedUrls();
+        settings.setBloomFilter(bloomFilter);
+        settings.setExpectedUrls(100_000);
+        settings.setFalsePositiveRate(0.0001);
+        return settings;
+    }
+}